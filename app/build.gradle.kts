@@ -2,6 +2,7 @@ import org.gradle.api.tasks.Copy
 
 plugins {
     alias(libs.plugins.android.application)
+    id("com.veilar.compiler")
 }
 
 android {
@@ -49,5 +50,3 @@ dependencies {
     androidTestImplementation(libs.espresso.core)
     implementation(project(":veilar"))
 }
-
-apply(from = "../veilar/veilar.gradle")
\ No newline at end of file
@@ -0,0 +1,45 @@
+plugins {
+    id("com.android.library")
+    alias(libs.plugins.androidx.benchmark)
+    id("com.veilar.compiler")
+}
+
+android {
+    namespace = "com.example.veilar.benchmark"
+    compileSdk = 35
+
+    defaultConfig {
+        minSdk = 24
+        targetSdk = 35
+        testInstrumentationRunner = "androidx.benchmark.junit4.AndroidBenchmarkRunner"
+        // Comparing the two inflation paths on an emulator is fine; measuring a debuggable build is not.
+        testInstrumentationRunnerArguments["androidx.benchmark.suppressErrors"] = "EMULATOR"
+    }
+
+    // Benchmarks run against the non-debuggable release build.
+    testBuildType = "release"
+    buildTypes {
+        release {
+            isDefault = true
+        }
+    }
+
+    compileOptions {
+        sourceCompatibility = JavaVersion.VERSION_11
+        targetCompatibility = JavaVersion.VERSION_11
+    }
+}
+
+// Measures the app's own screen, transpiled for this module.
+tasks.named("runVeilarCompiler", com.veilar.compiler.gradle.VeilarCompileTask::class.java) {
+    layoutDir.set(rootProject.layout.projectDirectory.dir("app/src/main/res/layout"))
+}
+
+dependencies {
+    implementation(libs.appcompat)
+    implementation(libs.material)
+    implementation(libs.constraintlayout)
+    implementation(project(":veilar"))
+    androidTestImplementation(libs.ext.junit)
+    androidTestImplementation(libs.benchmark.junit4)
+}
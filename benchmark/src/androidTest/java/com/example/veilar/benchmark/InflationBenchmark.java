@@ -0,0 +1,74 @@
+package com.example.veilar.benchmark;
+
+import android.content.Context;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.veilar.VeilarInflaterFactory;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Inflates the app's {@code activity_main}, transpiled by this module's compiler task (swapped Veilar tags plus
+ * framework views), through LayoutInflater's reflective constructor lookup and through {@link VeilarInflaterFactory}.
+ * Both inflaters leave every non-Veilar tag to the framework, so the difference is the cost of creating the Veilar
+ * views. {@link #inflateOffMainThread()} runs the factory path on the test thread, as {@code AsyncLayoutInflater} or
+ * a pre-inflation pool would.
+ * <p>
+ * Runs against the non-debuggable release build: {@code ./gradlew :benchmark:connectedReleaseAndroidTest}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InflationBenchmark {
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        Context target = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context = new ContextThemeWrapper(target, R.style.Theme_Veilar_Benchmark);
+    }
+
+    @Test
+    public void inflateReflective() {
+        LayoutInflater inflater = LayoutInflater.from(context).cloneInContext(context);
+        inflate(inflater);
+    }
+
+    @Test
+    public void inflateWithFactory() {
+        LayoutInflater inflater = LayoutInflater.from(context).cloneInContext(context);
+        inflater.setFactory2(new VeilarInflaterFactory(null));
+        inflate(inflater);
+    }
+
+    @Test
+    public void inflateOffMainThread() {
+        LayoutInflater inflater = LayoutInflater.from(context).cloneInContext(context);
+        inflater.setFactory2(new VeilarInflaterFactory(null));
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            inflater.inflate(R.layout.activity_main, null, false);
+        }
+    }
+
+    private void inflate(LayoutInflater inflater) {
+        BenchmarkState state = benchmarkRule.getState();
+        // Inflate on the main thread, as an activity does.
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            while (state.keepRunning()) {
+                inflater.inflate(R.layout.activity_main, null, false);
+            }
+        });
+    }
+}
@@ -1,4 +1,5 @@
 pluginManagement {
+    includeBuild("veilar-compiler")
     repositories {
         google {
             content {
@@ -22,4 +23,5 @@ dependencyResolutionManagement {
 rootProject.name = "Veilar"
 include(":app")
 include(":veilar")
+include(":benchmark")
  
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.veilar.compiler.bench;
+
+import com.veilar.compiler.VeilarEngine;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** End-to-end {@code VeilarEngine.run} over a generated corpus, from a clean state and as an up-to-date rerun. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompilerBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int nodes;
+
+    @Param({"0.1", "0.5", "1.0"})
+    public double density;
+
+    @Param({"0", "16"})
+    public int chain;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    private File root, layouts, res, assets, manifest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("veilar-bench").toFile();
+        layouts = new File(root, "layout");
+        res = new File(root, "out/res");
+        assets = new File(root, "out/assets");
+        manifest = new File(root, "out/layout-manifest.json");
+        LayoutCorpus.write(layouts, nodes, density, chain);
+        VeilarEngine.run(layouts, res, assets, manifest, ":app", workers, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(root.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void fullCompile() {
+        // Without a manifest every layout is transpiled again.
+        manifest.delete();
+        VeilarEngine.run(layouts, res, assets, manifest, ":app", workers, null);
+    }
+
+    @Benchmark
+    public void upToDateCompile() {
+        VeilarEngine.run(layouts, res, assets, manifest, ":app", workers, null);
+    }
+}
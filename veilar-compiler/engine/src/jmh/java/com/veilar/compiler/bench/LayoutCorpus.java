@@ -0,0 +1,82 @@
+package com.veilar.compiler.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Generates synthetic layout XML for the benchmarks. Output is fully deterministic for a given
+ * (nodes, density, chain) so results stay comparable between runs and machines.
+ *
+ * <ul>
+ *   <li>{@code nodes}: total element count, split into layouts of at most {@link #NODES_PER_LAYOUT}.</li>
+ *   <li>{@code density}: share of views (0..1) that carry {@code as9:*} attributes.</li>
+ *   <li>{@code chain}: length of {@code as9:shade="id:..."} reference chains; one starts every {@link #GROUP} views.</li>
+ * </ul>
+ */
+final class LayoutCorpus {
+
+    static final int NODES_PER_LAYOUT = 1000;
+    static final int GROUP = 50;
+
+    private static final String[] SHADES = {"blue", "red_light+white", "#3366FF", "teal_dark+amber"};
+    private static final String[] GRADIENTS = {"red:0;blue:100|linear|45", "amber;crimson;violet|radial", "teal:25;lime:25;white:50|sweep"};
+    private static final String[] SHAPES = {"cut", "squircle:20", "gon:6", null};
+    private static final String[] TAGS = {"Button", "TextView", "LinearLayout"};
+
+    private LayoutCorpus() {}
+
+    static void write(File dir, int nodes, double density, int chain) throws IOException {
+        dir.mkdirs();
+        int layouts = Math.max(1, (nodes + NODES_PER_LAYOUT - 1) / NODES_PER_LAYOUT);
+        for (int l = 0; l < layouts; l++) {
+            int count = Math.min(NODES_PER_LAYOUT, nodes - l * NODES_PER_LAYOUT);
+            String xml = layout(l, Math.max(1, count), density, chain);
+            Files.write(new File(dir, "bench_" + l + ".xml").toPath(), xml.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    static String layout(int index, int nodes, double density, int chain) {
+        StringBuilder sb = new StringBuilder(nodes * 160);
+        sb.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        sb.append("<androidx.constraintlayout.widget.ConstraintLayout")
+                .append(" xmlns:android=\"http://schemas.android.com/apk/res/android\"")
+                .append(" xmlns:as9=\"http://schemas.android.com/apk/res-auto\"")
+                .append(" android:layout_width=\"match_parent\" android:layout_height=\"match_parent\">\n");
+
+        int remaining = nodes - 1;
+        int group = 0;
+        while (remaining > 0) {
+            sb.append("    <LinearLayout android:layout_width=\"match_parent\" android:layout_height=\"wrap_content\" android:orientation=\"vertical\">\n");
+            remaining--;
+            int children = Math.min(GROUP - 1, remaining);
+            for (int j = 0; j < children; j++) view(sb, index, group, j, density, chain);
+            remaining -= children;
+            sb.append("    </LinearLayout>\n");
+            group++;
+        }
+        sb.append("</androidx.constraintlayout.widget.ConstraintLayout>\n");
+        return sb.toString();
+    }
+
+    private static void view(StringBuilder sb, int layout, int group, int j, double density, int chain) {
+        String id = "v_" + layout + "_" + group + "_" + j;
+        boolean inChain = j < chain;
+        boolean styled = inChain || (j * 37 + group * 11) % 100 < density * 100;
+
+        sb.append("        <").append(TAGS[j % TAGS.length])
+                .append(" android:id=\"@+id/").append(id).append("\"")
+                .append(" android:layout_width=\"wrap_content\" android:layout_height=\"wrap_content\"");
+        if (styled) {
+            String shade = (inChain && j > 0) ? "id:v_" + layout + "_" + group + "_" + (j - 1) : SHADES[j % SHADES.length];
+            sb.append(" as9:shade=\"").append(shade).append("\"");
+            if (j % 2 == 0) sb.append(" as9:bggradient=\"").append(GRADIENTS[j % GRADIENTS.length]).append("\"");
+            String shape = SHAPES[j % SHAPES.length];
+            if (shape != null) sb.append(" as9:shape=\"").append(shape).append("\"");
+            if (j % TAGS.length == 0) sb.append(" as9:interaction=\"shrink, dim\"");
+            if (j % 5 == 0) sb.append(" as9:width=\"120\" as9:height=\"48\"");
+        }
+        sb.append(" />\n");
+    }
+}
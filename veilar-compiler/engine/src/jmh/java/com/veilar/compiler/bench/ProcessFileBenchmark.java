@@ -0,0 +1,69 @@
+package com.veilar.compiler.bench;
+
+import com.veilar.compiler.CompileRun;
+import com.veilar.compiler.IdIndex;
+import com.veilar.compiler.VeilarEngine;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A single layout through the snapshot pre-pass and the streaming rewrite, without manifest or
+ * index bookkeeping. Shared selectors are only written on the first invocation, as in a real compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessFileBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int nodes;
+
+    @Param({"0.1", "0.5", "1.0"})
+    public double density;
+
+    @Param({"0", "16"})
+    public int chain;
+
+    private File input, output;
+    private VeilarEngine.LayoutScope scope;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File root = Files.createTempDirectory("veilar-bench").toFile();
+        root.deleteOnExit();
+        input = new File(root, "bench.xml");
+        output = new File(root, "out.xml");
+        Files.write(input.toPath(), LayoutCorpus.layout(0, nodes, density, chain).getBytes(StandardCharsets.UTF_8));
+
+        scope = new VeilarEngine.LayoutScope(input, new File(root, "color"), new File(root, "drawable"), ConcurrentHashMap.newKeySet(),
+                new CompileRun(null));
+        VeilarEngine.snapshotLayout(input, scope);
+        IdIndex index = new IdIndex();
+        index.add(input.getName(), scope.getEntry().getSnapshot());
+        index.seal();
+        scope.setIndex(index);
+    }
+
+    @Benchmark
+    public void snapshot() throws IOException {
+        VeilarEngine.snapshotLayout(input, scope);
+    }
+
+    @Benchmark
+    public Object rewrite() {
+        return VeilarEngine.processFile(scope, input, output);
+    }
+}
@@ -0,0 +1,60 @@
+package com.veilar.compiler.bench;
+
+import com.veilar.compiler.ColorResolver;
+import com.veilar.compiler.CompileRun;
+import com.veilar.compiler.GradientResolver;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** The color and gradient math, both uncached ({@code compute}) and through the memo ({@code resolve}). */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResolverBenchmark {
+
+    private static final String[] COLORS = {"blue", "red_light+white", "#3366FF", "teal_dark+amber", "crimson_light_light+violet+gray"};
+    private static final String[] GRADIENTS = {"red:0;blue:100|linear|45", "amber;crimson;violet|radial", "teal:0;lime:50;white:100|sweep"};
+    private static final Double[] STOPS = {10d, null, null, 30d, null, 20d};
+
+    private ColorResolver colors;
+    private GradientResolver gradients;
+
+    @Setup
+    public void setUp() {
+        CompileRun run = new CompileRun(null);
+        colors = run.getColors();
+        gradients = run.getGradients();
+    }
+
+    @Benchmark
+    public void colorCompute(Blackhole bh) {
+        for (String c : COLORS) bh.consume(ColorResolver.compute(c));
+    }
+
+    @Benchmark
+    public void colorResolveMemoized(Blackhole bh) {
+        for (String c : COLORS) bh.consume(colors.resolve(c));
+    }
+
+    @Benchmark
+    public void gradientCompute(Blackhole bh) {
+        for (String g : GRADIENTS) bh.consume(gradients.compute(g));
+    }
+
+    @Benchmark
+    public void gradientResolveMemoized(Blackhole bh) {
+        for (String g : GRADIENTS) bh.consume(gradients.resolve(g));
+    }
+
+    @Benchmark
+    public double[] calculateFinalStops() {
+        return GradientResolver.calculateFinalStops(STOPS.clone());
+    }
+}
@@ -0,0 +1,110 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.util.concurrent.atomic.AtomicLong
+
+@CompileStatic
+class ColorResolver {
+    static final Map<String, String> basecolors = [
+            "red": "#FF0000", "blue": "#0000FF", "yellow": "#FFFF00", "green": "#008000",
+            "orange": "#FFA500", "purple": "#800080", "teal": "#008080", "magenta": "#FF00FF",
+            "amber": "#FFC107", "lime": "#00FF00", "violet": "#8F00FF", "crimson": "#DC143C",
+            "black": "#000000", "white": "#FFFFFF", "gray": "#808080", "brown": "#8B4513",
+            "cyan": "#00FFFF"
+    ]
+
+    static class Entry {
+        final String hex
+        final List<String> warnings
+
+        Entry(String hex, List<String> warnings) {
+            this.hex = hex; this.warnings = warnings
+        }
+    }
+
+    // Raw expression -> resolved hex, shared by every layout (and worker thread) of a compile. A CompilerCache hands
+    // the same map to later compiles and to modules compiling alongside; entries depend on nothing but the
+    // expression, so that is safe. The counters belong to one compile.
+    final Map<String, Entry> cache
+    final Warnings warnings
+    final AtomicLong lookups = new AtomicLong(), misses = new AtomicLong()
+
+    ColorResolver(Map<String, Entry> cache, Warnings warnings) {
+        this.cache = cache; this.warnings = warnings
+    }
+
+    String resolve(String input) {
+        if (!input || input.isEmpty()) {
+            Warnings.warn("Color input is empty. Defaulting to Black.")
+            return "#000000"
+        }
+        lookups.incrementAndGet()
+        Entry entry = cache.computeIfAbsent(input) { String raw ->
+            misses.incrementAndGet()
+            List<String> warnings = []
+            return new Entry(Warnings.collect(warnings) { compute(raw) }, warnings)
+        }
+        warnings.replay(entry.warnings)
+        return entry.hex
+    }
+
+    static String compute(String input) {
+        input = input.toLowerCase().trim()
+
+        if (input.startsWith("#")) {
+            return input
+        } else {
+            String[] colors = input.split("\\+")
+            int totalR = 0, totalG = 0, totalB = 0
+
+            int validColorCount = 0
+
+            for (String colorEntry : colors) {
+                String[] parts = colorEntry.split("_")
+                int brightnessFactor = 0
+                String hex = "#000000"
+                boolean foundBase = false
+
+                for (String part : parts) {
+                    if (part == "light") {
+                        brightnessFactor += 30
+                    } else if (part == "dark") {
+                        brightnessFactor -= 30
+                    } else if (basecolors.containsKey(part)) {
+                        hex = basecolors[part]
+                        foundBase = true
+                    } else if (part.startsWith("#")) {
+                        hex = part
+                        foundBase = true
+                    } else {
+                        Warnings.warn("Unknown color constant '${part}'. Defaulting to Black (#000000).")
+                    }
+                }
+
+                try {
+                    int colorInt = Integer.parseInt(hex.replace("#", ""), 16)
+                    int r = (colorInt >> 16) & 0xFF
+                    int g = (colorInt >> 8) & 0xFF
+                    int b = colorInt & 0xFF
+
+                    totalR += Math.min(255, Math.max(0, r + brightnessFactor))
+                    totalG += Math.min(255, Math.max(0, g + brightnessFactor))
+                    totalB += Math.min(255, Math.max(0, b + brightnessFactor))
+                    validColorCount++
+                } catch (NumberFormatException e) {
+                    Warnings.warn("Invalid Hex format '${hex}'. Segment ignored.")
+                }
+            }
+
+            int avgR = 0, avgG = 0, avgB = 0
+            if (validColorCount > 0) {
+                avgR = (int)(totalR / validColorCount)
+                avgG = (int)(totalG / validColorCount)
+                avgB = (int)(totalB / validColorCount)
+            }
+
+            return String.format("#%02X%02X%02X", avgR, avgG, avgB)
+        }
+    }
+}
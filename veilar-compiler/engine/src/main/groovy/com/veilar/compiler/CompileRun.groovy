@@ -0,0 +1,34 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+// The state of one compile, reached through every LayoutScope. Modules of a parallel build compile side by side on
+// one CompilerCache, so nothing a compile counts or reports is static: each run sees only its own warnings and
+// telemetry, and never clears another's memos.
+@CompileStatic
+class CompileRun {
+    final CompilerCache cache
+    final Warnings warnings = new Warnings()
+    final ColorResolver colors
+    final GradientResolver gradients
+    final AtomicLong snapshotLookups = new AtomicLong(), snapshotHits = new AtomicLong()
+
+    // Without a cache the memos last for this compile only.
+    CompileRun(CompilerCache cache) {
+        this.cache = cache
+        colors = new ColorResolver(cache != null ? cache.colors : new ConcurrentHashMap<String, ColorResolver.Entry>(), warnings)
+        gradients = new GradientResolver(cache != null ? cache.gradients : new ConcurrentHashMap<String, GradientResolver.Entry>(),
+                colors, warnings)
+    }
+
+    CompilerCache.Snapshot snapshot(String hash) {
+        if (cache == null) return null
+        snapshotLookups.incrementAndGet()
+        CompilerCache.Snapshot known = cache.snapshots.get(hash)
+        if (known != null) snapshotHits.incrementAndGet()
+        return known
+    }
+}
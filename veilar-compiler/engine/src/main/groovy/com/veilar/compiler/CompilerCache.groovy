@@ -0,0 +1,48 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.util.concurrent.ConcurrentHashMap
+
+// Compiler state that outlives a single compile. The Gradle plugin keeps one per daemon, so every module of a
+// build and every later build start with warm resolver memos and the id snapshots of layouts already seen. Every
+// entry depends only on its key, so compiles running side by side share it safely; what a compile counts and
+// reports lives in its CompileRun.
+@CompileStatic
+class CompilerCache {
+    static final int MAX_SNAPSHOTS = 10000
+    static final int MAX_RESOLVED = 100000
+
+    static class Snapshot {
+        final Set<String> ids, refs
+        final Map<String, Map<String, String>> views
+
+        Snapshot(LayoutManifest.Entry entry) {
+            ids = new TreeSet<>(entry.ids)
+            refs = new TreeSet<>(entry.refs)
+            views = new TreeMap<>(entry.snapshot)
+        }
+
+        void copyTo(LayoutManifest.Entry entry) {
+            entry.ids.addAll(ids)
+            entry.refs.addAll(refs)
+            entry.snapshot.putAll(views)
+        }
+    }
+
+    // Layout content hash -> its snapshot, which depends on nothing but the file's bytes.
+    final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>()
+    final Map<String, ColorResolver.Entry> colors = new ConcurrentHashMap<>()
+    final Map<String, GradientResolver.Entry> gradients = new ConcurrentHashMap<>()
+
+    void store(String hash, LayoutManifest.Entry entry) {
+        snapshots.put(hash, new Snapshot(entry))
+    }
+
+    // Bounds what a long-lived daemon holds; a dropped table only costs the next compile its warm start.
+    void trim() {
+        if (snapshots.size() > MAX_SNAPSHOTS) snapshots.clear()
+        if (colors.size() > MAX_RESOLVED) colors.clear()
+        if (gradients.size() > MAX_RESOLVED) gradients.clear()
+    }
+}
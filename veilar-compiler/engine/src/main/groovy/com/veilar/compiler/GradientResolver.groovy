@@ -0,0 +1,192 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.util.concurrent.atomic.AtomicLong
+
+@CompileStatic
+class GradientResolver {
+    static class Result {
+        String type, tile
+        int angle
+        String[] hexColors
+        double[] stops
+        String[] shaderParams
+        String bundle
+
+        Result(String t, int a, String tl, String[] h, double[] s, String[] sp) {
+            type=t; angle=a; tile=tl; hexColors=h; stops=s; shaderParams=sp
+            bundle = GradientResolver.bundleOf(this)
+        }
+    }
+
+    static final Result INVALID = new Result("linear", 0, "clamp", new String[0], new double[0], new String[0])
+
+    static class Entry {
+        final Result result
+        final List<String> warnings
+
+        Entry(Result result, List<String> warnings) {
+            this.result = result; this.warnings = warnings
+        }
+    }
+
+    // Raw expression -> resolved (and already bundled) gradient, shared the way ColorResolver.cache is.
+    final Map<String, Entry> cache
+    final ColorResolver colors
+    final Warnings warnings
+    final AtomicLong lookups = new AtomicLong(), misses = new AtomicLong()
+
+    GradientResolver(Map<String, Entry> cache, ColorResolver colors, Warnings warnings) {
+        this.cache = cache; this.colors = colors; this.warnings = warnings
+    }
+
+    Result resolve(String input) {
+        if (!input) return compute(input)
+        lookups.incrementAndGet()
+        Entry entry = cache.computeIfAbsent(input) { String raw ->
+            misses.incrementAndGet()
+            List<String> warnings = []
+            return new Entry(Warnings.collect(warnings) { compute(raw) ?: INVALID }, warnings)
+        }
+        warnings.replay(entry.warnings)
+        return entry.result.is(INVALID) ? null : entry.result
+    }
+
+    Result compute(String input) {
+        if (!input || !input.contains(";")) {
+            Warnings.warn("Invalid gradient input. Format should be 'color:stop;color:stop|type|angle'.")
+            return null 
+        }
+
+        input = input.toLowerCase()
+
+        String[] parts = input.split("\\|")
+        if (parts.length < 2) {
+            Warnings.warn("Gradient metadata missing (type/angle/tile). Defaulting to linear | 0 | clamp.")
+        }
+
+        String type = "linear"
+        int angle = 0
+        String tile = "clamp"
+        String[] shaderParams = []
+
+        for (int i = 1; i < parts.length; i++) {
+            String bit = parts[i].trim()
+            if (bit.isEmpty()) continue
+
+            if (bit == "clamp" || bit == "mirror" || bit == "repeat") {
+                tile = bit
+            } else if (isInteger(bit)) {
+                angle = Integer.parseInt(bit)
+            } else if (bit.contains("radial") || bit.contains("linear") || bit.contains("sweep")) {
+                shaderParams = bit.split(":", -1)
+                type = shaderParams[0]
+            }
+        }
+
+        String[] colorSegments = parts[0].split(";")
+        int n = colorSegments.length
+        if (n < 2) {
+            Warnings.warn("Gradient requires at least 2 colors. ID: " + n + " segment(s) found.")
+        }
+
+        String[] hexColors = new String[n]
+        Double[] percents = new Double[n]
+
+        for (int i = 0; i < n; i++) {
+            String segment = colorSegments[i].trim()
+            if (segment.contains(":")) {
+                String[] values = segment.split(":")
+                hexColors[i] = colors.resolve(values[0].trim())
+                try {
+                    String pRaw = numericPart(values[1])
+                    percents[i] = pRaw.isEmpty() ? null : Double.parseDouble(pRaw)
+                } catch (Exception e) {
+                    Warnings.warn("Invalid percent value in segment: " + segment + ". Defaulting to auto-fill.")
+                    percents[i] = null
+                }
+            } else {
+                hexColors[i] = colors.resolve(segment)
+                percents[i] = null
+            }
+        }
+
+        double[] finalStops = calculateFinalStops(percents)
+        return new Result(type, angle, tile, hexColors, finalStops, shaderParams)
+    }
+
+    static double[] calculateFinalStops(Double[] raw) {
+        int n = raw.length
+        if (n == 0) return new double[0]
+
+        double[] relativeSizes = new double[n]
+        double currentSum = 0
+        int nulls = 0
+
+        for (Double p : raw) {
+            if (p != null) currentSum += p
+            else nulls++
+        }
+
+        if (currentSum > 100.0) {
+            Warnings.warn("Gradient stops sum (" + currentSum + "%) exceeds 100%. Normalizing weights.")
+        }
+
+        double fill = (nulls > 0) ? Math.max(0, (100.0 - currentSum) / nulls) : 0
+        double totalWeight = 0
+        for (int i = 0; i < n; i++) {
+            relativeSizes[i] = (raw[i] != null) ? raw[i] : fill
+            totalWeight += relativeSizes[i]
+        }
+
+        double[] cumulativeStops = new double[n]
+        double runningTotal = 0
+        for (int i = 0; i < n; i++) {
+            if (i == 0) {
+                cumulativeStops[i] = 0.0
+                runningTotal += (totalWeight > 0) ? relativeSizes[i] / totalWeight : 0
+            } else if (i == n - 1) {
+                cumulativeStops[i] = 1.0
+            } else {
+                cumulativeStops[i] = runningTotal
+                runningTotal += (totalWeight > 0) ? relativeSizes[i] / totalWeight : 0
+            }
+        }
+
+        return cumulativeStops
+    }
+
+    static String bundleOf(Result res) {
+        StringBuilder sb = new StringBuilder(res.type)
+        for (int k = 1; k < res.shaderParams.length; k++) sb.append(":").append(res.shaderParams[k])
+        sb.append("|")
+        for (int k = 0; k < res.hexColors.length; k++) {
+            sb.append(res.hexColors[k]).append(":").append(res.stops[k])
+            if (k < res.hexColors.length - 1) sb.append(";")
+        }
+        sb.append("|").append(res.angle).append("|").append(res.tile)
+        return sb.toString()
+    }
+
+    // Hand-rolled equivalent of matches("-?\\d+").
+    static boolean isInteger(String s) {
+        int start = s.startsWith("-") ? 1 : 0
+        if (s.length() == start) return false
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i)
+            if (c < (char) '0' || c > (char) '9') return false
+        }
+        return true
+    }
+
+    // Hand-rolled equivalent of replaceAll("[^\\d.]", "").
+    static String numericPart(String s) {
+        StringBuilder sb = new StringBuilder(s.length())
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i)
+            if ((c >= (char) '0' && c <= (char) '9') || c == (char) '.') sb.append(c)
+        }
+        return sb.toString()
+    }
+}
@@ -0,0 +1,94 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.util.concurrent.atomic.AtomicLong
+
+@CompileStatic
+class IdIndex {
+    // layout file -> view id -> as9:* attributes
+    final Map<String, Map<String, Map<String, String>>> layouts = [:]
+    // view id -> first layout (in file name order) declaring it, for references that leave their own layout
+    final Map<String, String> owners = [:]
+    // "layout\u0000id\u0000attr" -> fully resolved value, null when the chain is broken or circular
+    final Map<String, String> resolved = [:]
+    final AtomicLong lookups = new AtomicLong(), memoHits = new AtomicLong()
+
+    void add(String layout, Map<String, Map<String, String>> snapshot) {
+        layouts.put(layout, snapshot)
+        snapshot.keySet().each { id -> owners.putIfAbsent(id, layout) }
+    }
+
+    String owner(String layout, String id) {
+        Map<String, Map<String, String>> local = layouts[layout]
+        return (local != null && local.containsKey(id)) ? layout : owners[id]
+    }
+
+    String declared(String layout, String id, String attr) {
+        return layouts[layout]?.get(id)?.get(attr)
+    }
+
+    String resolve(String layout, String id, String attr) {
+        String key = key(layout, id, attr)
+        lookups.incrementAndGet()
+        if (!resolved.containsKey(key)) return declared(layout, id, attr)
+        memoHits.incrementAndGet()
+        return resolved[key]
+    }
+
+    // Resolves every id: reference once. Each (view, attribute) has at most one outgoing reference, so
+    // following a chain until it reaches a resolved entry, a plain value or itself is enough to order and
+    // cycle-check the whole graph in linear time.
+    void seal() {
+        layouts.each { layout, ids ->
+            ids.each { id, attrs ->
+                attrs.each { attr, value ->
+                    if (value.startsWith("id:")) resolveChain(layout, id, attr)
+                }
+            }
+        }
+    }
+
+    private void resolveChain(String layout, String id, String attr) {
+        List<String> path = []
+        List<String> chain = []
+        Set<String> onPath = new HashSet<>()
+        String currentLayout = layout, currentId = id
+        String result = null
+
+        while (true) {
+            String key = key(currentLayout, currentId, attr)
+            if (resolved.containsKey(key)) {
+                result = resolved[key]
+                break
+            }
+            if (!onPath.add(key)) {
+                chain.add(currentId)
+                println "\u001B[33mVEILAR WARNING:\nCircular ID reference on ${attr}: " + chain.join(" -> ") + ". Value ignored.\u001B[0m"
+                result = null
+                break
+            }
+            path.add(key)
+            chain.add(currentId)
+
+            String value = declared(currentLayout, currentId, attr)
+            if (value == null || !value.startsWith("id:")) {
+                result = value
+                break
+            }
+            String target = value.substring(3).trim().toLowerCase()
+            currentLayout = owner(currentLayout, target)
+            currentId = target
+            if (currentLayout == null) {
+                result = null
+                break
+            }
+        }
+
+        path.each { resolved.put(it, result) }
+    }
+
+    private static String key(String layout, String id, String attr) {
+        return layout + "\u0000" + id + "\u0000" + attr
+    }
+}
@@ -0,0 +1,80 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import groovy.transform.CompileStatic
+import java.security.MessageDigest
+
+@CompileStatic
+class LayoutManifest {
+    static final int VERSION = 11
+
+    static class Entry {
+        String hash
+        Set<String> ids = new TreeSet<>()
+        Set<String> refs = new TreeSet<>()
+        Map<String, String> sources = new TreeMap<>()
+        Set<String> assets = new TreeSet<>()
+        Map<String, String> report = new TreeMap<>()
+        Map<String, Map<String, String>> snapshot = new TreeMap<>()
+        Map<String, String> styles = new TreeMap<>()
+        int selectorUses = 0
+    }
+
+    // The module whose style table the outputs point into.
+    String module
+    Map<String, Entry> layouts = new TreeMap<>()
+
+    static LayoutManifest load(File file) {
+        if (!file.exists()) return null
+        try {
+            Map json = (Map) new JsonSlurper().parse(file)
+            if (json.version != VERSION) return null
+
+            LayoutManifest manifest = new LayoutManifest(module: (String) json.module)
+            ((Map<String, Map>) json.layouts).each { String name, Map e ->
+                Entry entry = new Entry(hash: (String) e.hash, selectorUses: e.selectorUses as int)
+                entry.ids.addAll(e.ids as List<String>)
+                entry.refs.addAll(e.refs as List<String>)
+                entry.sources.putAll(e.sources as Map<String, String>)
+                entry.assets.addAll(e.assets as List<String>)
+                entry.report.putAll(e.report as Map<String, String>)
+                entry.snapshot.putAll(e.snapshot as Map<String, Map<String, String>>)
+                entry.styles.putAll(e.styles as Map<String, String>)
+                manifest.layouts.put(name, entry)
+            }
+            return manifest
+        } catch (Exception e) {
+            println "\u001B[33mVEILAR WARNING:\nLayout manifest is unreadable. Rebuilding every layout.\u001B[0m"
+            return null
+        }
+    }
+
+    void save(File file) {
+        Map<String, Object> entries = [:]
+        layouts.each { name, entry ->
+            entries[name] = [
+                    hash    : entry.hash,
+                    ids     : entry.ids as List,
+                    refs    : entry.refs as List,
+                    sources : entry.sources,
+                    assets  : entry.assets as List,
+                    report  : entry.report,
+                    snapshot: entry.snapshot,
+                    styles  : entry.styles,
+                    selectorUses: entry.selectorUses
+            ]
+        }
+        Outputs.writeIfChanged(file, JsonOutput.prettyPrint(JsonOutput.toJson([version: VERSION, module: module, layouts: entries])))
+    }
+
+    static String hashOf(File file) {
+        if (!file.exists()) return ""
+        return MessageDigest.getInstance("SHA-256").digest(file.bytes).encodeHex().toString()
+    }
+
+    static boolean sourcesChanged(Entry entry) {
+        return entry.sources.any { path, hash -> hashOf(new File(path)) != hash }
+    }
+}
@@ -0,0 +1,50 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+
+// Every generated file goes through here, so an unchanged output keeps its timestamp and nothing downstream
+// (resource merging, R class generation, IDE indexers) sees it as touched.
+@CompileStatic
+class Outputs {
+    static boolean writeIfChanged(File file, byte[] bytes) {
+        if (file.length() == bytes.length && file.isFile() && Arrays.equals(file.bytes, bytes)) return false
+        if (!file.parentFile.exists()) file.parentFile.mkdirs()
+        file.bytes = bytes
+        return true
+    }
+
+    static boolean writeIfChanged(File file, String text) {
+        return writeIfChanged(file, text.getBytes("UTF-8"))
+    }
+
+    // Moves a finished temp file over file unless both hold the same bytes, in which case the temp file is dropped.
+    // Contents are compared a buffer at a time, so neither file is ever held in memory.
+    static boolean replaceIfChanged(File temp, File file) {
+        if (file.isFile() && file.length() == temp.length() && sameContent(temp, file)) {
+            temp.delete()
+            return false
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING)
+        return true
+    }
+
+    private static boolean sameContent(File a, File b) {
+        InputStream left = new BufferedInputStream(new FileInputStream(a))
+        InputStream right = new BufferedInputStream(new FileInputStream(b))
+        try {
+            byte[] x = new byte[8192], y = new byte[8192]
+            while (true) {
+                int n = left.readNBytes(x, 0, x.length)
+                if (right.readNBytes(y, 0, y.length) != n) return false
+                if (n == 0) return true
+                if (!Arrays.equals(x, 0, n, y, 0, n)) return false
+            }
+        } finally {
+            left.close()
+            right.close()
+        }
+    }
+}
@@ -0,0 +1,114 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.security.MessageDigest
+import java.util.regex.Matcher
+import java.util.regex.Pattern
+
+// Bakes fixed-size, static Veilar shapes into vector drawables so the runtime never builds their paths.
+@CompileStatic
+class ShapeVectorizer {
+    static final Pattern FIXED_DP = Pattern.compile("(\\d+(?:\\.\\d+)?)dp")
+    static final float SQUIRCLE_RATIO = 0.5522847498f
+    static final String[] NAMES = ["rect", "oval", "cut", "pill", "squircle", "gon"]
+
+    // Only cut, squircle and polygon shapes are worth baking; the rest already map onto cheap outlines.
+    static boolean supports(int shapeId) {
+        return shapeId == 2 || shapeId == 4 || shapeId == 5
+    }
+
+    static Float fixedDp(String value) {
+        if (!value) return null
+        Matcher m = FIXED_DP.matcher(value.trim())
+        return m.matches() ? Float.parseFloat(m.group(1)) : null
+    }
+
+    // Same geometry as the runtime PathShapes, in dp instead of px.
+    static String pathData(int shapeId, int sides, float w, float h, float r) {
+        StringBuilder sb = new StringBuilder()
+        if (shapeId == 2) {
+            sb.append("M").append(pt(r, 0)).append(" L").append(pt(w - r, 0)).append(" L").append(pt(w, r))
+            sb.append(" L").append(pt(w, h - r)).append(" L").append(pt(w - r, h)).append(" L").append(pt(r, h))
+            sb.append(" L").append(pt(0, h - r)).append(" L").append(pt(0, r))
+        } else if (shapeId == 4) {
+            float s = Math.min(r, (float) (Math.min(w, h) / 2f)), c = (float) (s * SQUIRCLE_RATIO)
+            sb.append("M").append(pt(s, 0)).append(" L").append(pt(w - s, 0))
+            sb.append(" C").append(pt(w - c, 0)).append(" ").append(pt(w, c)).append(" ").append(pt(w, s)).append(" L").append(pt(w, h - s))
+            sb.append(" C").append(pt(w, h - c)).append(" ").append(pt(w - c, h)).append(" ").append(pt(w - s, h)).append(" L").append(pt(s, h))
+            sb.append(" C").append(pt(c, h)).append(" ").append(pt(0, h - c)).append(" ").append(pt(0, h - s)).append(" L").append(pt(0, s))
+            sb.append(" C").append(pt(0, c)).append(" ").append(pt(c, 0)).append(" ").append(pt(s, 0))
+        } else {
+            float cx = (float) (w / 2f), cy = (float) (h / 2f)
+            for (int i = 0; i < sides; i++) {
+                double angle = 2.0 * Math.PI * i / sides - Math.PI / 2.0
+                sb.append(i == 0 ? "M" : " L").append(pt((float) (cx + cx * Math.cos(angle)), (float) (cy + cy * Math.sin(angle))))
+            }
+        }
+        return sb.append(" Z").toString()
+    }
+
+    static String fill(GradientResolver.Result gradient, float w, float h, String indent) {
+        StringBuilder sb = new StringBuilder()
+        sb.append(indent).append("<aapt:attr name=\"android:fillColor\">\n")
+        sb.append(indent).append("    <gradient android:tileMode=\"clamp\"")
+        if (gradient.type == "radial") {
+            sb.append(" android:type=\"radial\" android:centerX=\"${num(w / 2f)}\" android:centerY=\"${num(h / 2f)}\" android:gradientRadius=\"${num(Math.max(w, h) / 2f)}\"")
+        } else if (gradient.type == "sweep") {
+            sb.append(" android:type=\"sweep\" android:centerX=\"${num(w / 2f)}\" android:centerY=\"${num(h / 2f)}\"")
+        } else {
+            double rad = Math.toRadians(gradient.angle)
+            sb.append(" android:type=\"linear\" android:startX=\"0\" android:startY=\"0\" android:endX=\"${num((float) (Math.cos(rad) * w))}\" android:endY=\"${num((float) (Math.sin(rad) * h))}\"")
+        }
+        sb.append(">\n")
+        for (int k = 0; k < gradient.hexColors.length; k++) {
+            sb.append(indent).append("        <item android:offset=\"${num((float) gradient.stops[k])}\" android:color=\"${gradient.hexColors[k]}\" />\n")
+        }
+        sb.append(indent).append("    </gradient>\n")
+        sb.append(indent).append("</aapt:attr>\n")
+        return sb.toString()
+    }
+
+    // A background gradient wins over a flat shade, exactly as in the views.
+    static String vector(String path, GradientResolver.Result gradient, String shade, float w, float h, String indent) {
+        StringBuilder sb = new StringBuilder()
+        sb.append(indent).append("<vector android:width=\"${num(w)}dp\" android:height=\"${num(h)}dp\"")
+        sb.append(" android:viewportWidth=\"${num(w)}\" android:viewportHeight=\"${num(h)}\">\n")
+        if (gradient != null) {
+            sb.append(indent).append("    <path android:pathData=\"${path}\">\n")
+            sb.append(fill(gradient, w, h, indent + "        "))
+            sb.append(indent).append("    </path>\n")
+        } else {
+            sb.append(indent).append("    <path android:pathData=\"${path}\" android:fillColor=\"${shade}\" />\n")
+        }
+        sb.append(indent).append("</vector>\n")
+        return sb.toString()
+    }
+
+    // Buttons keep the ripple VeilarButton draws, masked by the same shape.
+    static String drawableXml(String path, GradientResolver.Result gradient, String shade, float w, float h, boolean ripple) {
+        String ns = "xmlns:android=\"http://schemas.android.com/apk/res/android\" xmlns:aapt=\"http://schemas.android.com/aapt\""
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+        if (!ripple) {
+            return sb.append(vector(path, gradient, shade, w, h, "").replaceFirst("<vector", "<vector " + ns)).toString()
+        }
+        sb.append("<ripple ").append(ns).append(" android:color=\"#40FFFFFF\">\n")
+        sb.append("    <item>\n").append(vector(path, gradient, shade, w, h, "        ")).append("    </item>\n")
+        sb.append("    <item android:id=\"@android:id/mask\">\n").append(vector(path, null, "#FFFFFFFF", w, h, "        ")).append("    </item>\n")
+        sb.append("</ripple>\n")
+        return sb.toString()
+    }
+
+    static String nameOf(String xml) {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(xml.getBytes("UTF-8"))
+        return "vshape_" + digest.encodeHex().toString().substring(0, 12)
+    }
+
+    static String pt(double x, double y) {
+        return num(x) + "," + num(y)
+    }
+
+    static String num(double v) {
+        return new BigDecimal(Float.toString((float) v)).setScale(3, BigDecimal.ROUND_HALF_UP).stripTrailingZeros().toPlainString()
+    }
+}
@@ -0,0 +1,122 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.security.MessageDigest
+
+// Writer for the style tables under assets/veilar/. The layout mirrors com.veilar.VeilarStyleTable, which reads it.
+@CompileStatic
+class StyleTable {
+    static final int MAGIC = 0x56535459
+    static final int VERSION = 2
+    static final Map<String, Integer> TYPES = [linear: 0, radial: 1, sweep: 2]
+    static final Map<String, Integer> TILES = [clamp: 0, repeat: 1, mirror: 2]
+
+    // Returns null when any value can't be reduced to primitives; such views keep their string bundles.
+    static byte[] encode(GradientResolver.Result text, GradientResolver.Result background, String bgShade, String shapeBundle, String radius) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+            DataOutputStream out = new DataOutputStream(bytes)
+            if (background == null && bgShade) {
+                Integer color = argb(bgShade)
+                if (color == null) return null
+                background = new GradientResolver.Result("linear", 0, "clamp", [bgShade, bgShade] as String[], [0d, 1d] as double[], ["linear"] as String[])
+            }
+            int flags = (text != null ? 1 : 0) | (background != null ? 2 : 0) | (shapeBundle != null ? 4 : 0) | (radius != null ? 8 : 0)
+            out.writeByte(flags)
+            if (text != null && !writeGradient(out, text)) return null
+            if (background != null && !writeGradient(out, background)) return null
+            if (shapeBundle != null) {
+                String[] shape = shapeBundle.split(":")
+                out.writeByte(Integer.parseInt(shape[0]))
+                out.writeShort(Integer.parseInt(shape[1]))
+            }
+            if (radius != null) out.writeFloat(Float.parseFloat(radius.replaceAll("[^\\d.]", "")))
+            out.flush()
+            return bytes.toByteArray()
+        } catch (Exception e) {
+            return null
+        }
+    }
+
+    static boolean writeGradient(DataOutputStream out, GradientResolver.Result gradient) {
+        if (gradient.hexColors.length > 255) return false
+        out.writeByte(TYPES.getOrDefault(gradient.type, 0))
+        out.writeShort(gradient.angle)
+        out.writeByte(TILES.getOrDefault(gradient.tile, 0))
+        out.writeByte(gradient.hexColors.length)
+        for (int k = 0; k < gradient.hexColors.length; k++) {
+            Integer color = argb(gradient.hexColors[k])
+            if (color == null) return false
+            out.writeInt(color)
+            out.writeFloat((float) gradient.stops[k])
+        }
+        return true
+    }
+
+    // Every module writes its own table, since asset merging keeps only one file per path. Views name theirs through
+    // app:styleTable, so a library's ids are never looked up in the app's table.
+    static int tableIdOf(String module) {
+        return idOf(module.getBytes("UTF-8"))
+    }
+
+    static String assetOf(int tableId) {
+        return String.format("veilar/styles_%08x.bin", tableId)
+    }
+
+    // Stable, non-zero id derived from the encoded style, so unchanged layouts keep their ids. See assignIds for
+    // styles whose hashes collide.
+    static int idOf(byte[] payload) {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(payload)
+        int id = ((digest[0] & 0x7F) << 24) | ((digest[1] & 0xFF) << 16) | ((digest[2] & 0xFF) << 8) | (digest[3] & 0xFF)
+        return id == 0 ? 1 : id
+    }
+
+    // One id per distinct style across the given layouts: its hash, or on a collision the next free id. Styles are
+    // placed in sorted payload order, so the same set of styles always gets the same ids.
+    static Map<String, Integer> assignIds(Collection<LayoutManifest.Entry> entries) {
+        Set<String> payloads = new TreeSet<>()
+        entries.each { payloads.addAll(it.styles.values()) }
+        Map<String, Integer> ids = [:]
+        Set<Integer> taken = new HashSet<>()
+        payloads.each { String hex ->
+            int id = idOf(hex.decodeHex())
+            while (!taken.add(id)) id = id == Integer.MAX_VALUE ? 1 : id + 1
+            ids.put(hex, id)
+        }
+        return ids
+    }
+
+    // The ids the given layouts were written with, by encoded style.
+    static Map<String, Integer> idsOf(Collection<LayoutManifest.Entry> entries) {
+        Map<String, Integer> ids = [:]
+        entries.each { entry -> entry.styles.each { String id, String hex -> ids.put(hex, Integer.parseInt(id)) } }
+        return ids
+    }
+
+    // Same forms Color.parseColor() accepts for compiler output: #RRGGBB and #AARRGGBB.
+    static Integer argb(String hex) {
+        if (!hex || !hex.startsWith("#")) return null
+        String digits = hex.substring(1)
+        try {
+            if (digits.length() == 6) return (int) (0xFF000000L | Long.parseLong(digits, 16))
+            if (digits.length() == 8) return (int) Long.parseLong(digits, 16)
+        } catch (NumberFormatException e) {}
+        return null
+    }
+
+    static void write(File file, Map<Integer, byte[]> styles) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        DataOutputStream out = new DataOutputStream(bytes)
+        out.writeInt(MAGIC)
+        out.writeShort(VERSION)
+        out.writeInt(styles.size())
+        styles.each { id, payload ->
+            out.writeInt(id)
+            out.writeShort(payload.length)
+            out.write(payload)
+        }
+        out.flush()
+        Outputs.writeIfChanged(file, bytes.toByteArray())
+    }
+}
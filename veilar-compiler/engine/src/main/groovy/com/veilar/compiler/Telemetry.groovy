@@ -0,0 +1,81 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.json.JsonOutput
+import groovy.transform.CompileStatic
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryMXBean
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicLong
+
+// Wall-clock stages, counters and (optionally) trace events of one compile.
+@CompileStatic
+class Telemetry {
+    final long origin = System.nanoTime()
+    final Map<String, Long> stages = new LinkedHashMap<>()
+    // Chrome trace-event records; null unless a trace file was requested.
+    final Queue<Map<String, Object>> events
+    // Heap in use when the compile started and the most seen since, sampled at stage and layout boundaries. The
+    // daemon is shared with other builds and plugins, so its own peak-usage counters are left alone.
+    final long heapBaseline
+    final AtomicLong heapPeak
+
+    Telemetry(boolean tracing) {
+        events = tracing ? new ConcurrentLinkedQueue<>() : null
+        heapBaseline = heapUsed()
+        heapPeak = new AtomicLong(heapBaseline)
+    }
+
+    long mark() {
+        return System.nanoTime()
+    }
+
+    void stage(String name, long start) {
+        long duration = System.nanoTime() - start
+        stages.put(name, duration)
+        span(name, "stage", start, duration, null)
+        sampleHeap()
+    }
+
+    void sampleHeap() {
+        long used = heapUsed()
+        long peak = heapPeak.get()
+        while (used > peak && !heapPeak.compareAndSet(peak, used)) peak = heapPeak.get()
+    }
+
+    void span(String name, String category, long start, long duration, String layout) {
+        if (events == null) return
+        Map<String, Object> event = [name: name, cat: category, ph: "X", pid: 1, tid: Thread.currentThread().id,
+                                     ts: micros(start - origin), dur: micros(duration)]
+        if (layout != null) event.args = [layout: layout]
+        events.add(event)
+    }
+
+    // Heap of the compiling JVM (usually the Gradle daemon, so other work counts too): in use at the start, the
+    // sampled peak, and how far the compile grew it.
+    Map<String, Long> heapReport() {
+        sampleHeap()
+        return [baseline: heapBaseline, peak: heapPeak.get(), growth: heapPeak.get() - heapBaseline]
+    }
+
+    private static long heapUsed() {
+        MemoryMXBean memory = ManagementFactory.memoryMXBean
+        return memory.heapMemoryUsage.used
+    }
+
+    void writeTrace(File file) {
+        if (events == null || file == null) return
+        if (!file.parentFile.exists()) file.parentFile.mkdirs()
+        List<Map<String, Object>> sorted = new ArrayList<>(events)
+        sorted.sort { it.ts as double }
+        file.text = JsonOutput.toJson([traceEvents: sorted, displayTimeUnit: "ms"])
+    }
+
+    static double millis(long nanos) {
+        return Math.round(nanos / 1000.0d) / 1000.0d
+    }
+
+    static double micros(long nanos) {
+        return Math.round(nanos / 10.0d) / 100.0d
+    }
+}
@@ -0,0 +1,1030 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.json.JsonOutput
+import groovy.transform.CompileStatic
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.regex.Pattern
+import javax.xml.stream.XMLInputFactory
+import javax.xml.stream.XMLOutputFactory
+import javax.xml.stream.XMLStreamConstants
+import javax.xml.stream.XMLStreamReader
+import javax.xml.stream.XMLStreamWriter
+
+@CompileStatic
+class VeilarEngine {
+
+    static final String ANDROID_NS = "http://schemas.android.com/apk/res/android"
+    static final String RES_AUTO_NS = "http://schemas.android.com/apk/res-auto"
+    static final XMLInputFactory INPUT_FACTORY = createInputFactory()
+    static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance()
+    static final Pattern ID_PREFIX = Pattern.compile("@\\+?id/")
+    static final List<String> INTERACTIONS = ["shrink", "pop", "dim", "glow", "vibe"]
+
+    static void run(File inputDir, File resDir, File assetsDir, File manifestFile, String module, int workers, File traceFile) {
+        run(inputDir, resDir, assetsDir, manifestFile, module, workers, null, traceFile, null)
+    }
+
+    // cache carries warm state between compiles; without one every compile starts cold. Timings go to
+    // telemetryFile, outside the generated sources, so they never change what gets packaged. A layout that can't
+    // be transpiled fails the whole compile, after every other job has finished, and leaves no manifest behind.
+    // module names the style table, so it must be unique among the modules of one app (e.g. the Gradle project path).
+    static void run(File inputDir, File resDir, File assetsDir, File manifestFile, String module, int workers,
+                    File telemetryFile, File traceFile, CompilerCache cache) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, workers))
+        Telemetry telemetry = new Telemetry(traceFile != null)
+        try {
+            long stage = telemetry.mark()
+            CompileRun run = new CompileRun(cache)
+            File outputDir = new File(resDir, "layout")
+            File colorDir = new File(resDir, "color")
+            File drawDir = new File(resDir, "drawable")
+            if (!outputDir.exists()) outputDir.mkdirs()
+
+            // Without usable history every layout is transpiled again. Files from earlier runs are left in place
+            // so identical outputs are not rewritten; whatever is no longer generated is swept at the end.
+            // Outputs of another module point into another style table.
+            LayoutManifest previous = LayoutManifest.load(manifestFile)
+            if (previous?.module != module) previous = new LayoutManifest()
+            int styleTable = StyleTable.tableIdOf(module)
+
+            Map<String, File> layouts = new TreeMap<>()
+            inputDir.listFiles()?.each { file ->
+                if (file.name.endsWith(".xml")) layouts.put(file.name, file)
+            }
+
+            LayoutManifest manifest = new LayoutManifest(module: module)
+            Set<String> changedIds = new HashSet<>()
+            Map<String, String> hashes = [:]
+            Set<String> dirty = new TreeSet<>()
+
+            layouts.each { name, file ->
+                String hash = LayoutManifest.hashOf(file)
+                hashes.put(name, hash)
+                LayoutManifest.Entry old = previous.layouts[name]
+                if (old == null || old.hash != hash || !new File(outputDir, name).exists() || LayoutManifest.sourcesChanged(old)) {
+                    dirty.add(name)
+                }
+            }
+
+            previous.layouts.each { name, entry ->
+                if (!layouts.containsKey(name)) changedIds.addAll(entry.ids)
+            }
+
+            telemetry.stage("scan", stage)
+
+            stage = telemetry.mark()
+            Map<String, LayoutScope> scopes = new ConcurrentHashMap<>()
+            Set<String> shared = ConcurrentHashMap.newKeySet()
+            Set<String> processed = new TreeSet<>()
+            // Deleted layouts take their ids with them, so their dependents are stale even when nothing else changed.
+            Set<String> pending = new TreeSet<>(dirty)
+            pending.addAll(staleDependents(layouts.keySet(), dirty, previous, changedIds))
+            while (!pending.isEmpty()) {
+                processed.addAll(pending)
+                List<ForkJoinTask<?>> snapshots = pending.collect { String name ->
+                    pool.submit({
+                        LayoutScope scope = new LayoutScope(layouts[name], colorDir, drawDir, shared, run)
+                        long start = telemetry.mark()
+                        try {
+                            CompilerCache.Snapshot known = run.snapshot(hashes[name])
+                            if (known != null) {
+                                known.copyTo(scope.entry)
+                            } else {
+                                snapshotLayout(layouts[name], scope)
+                                cache?.store(hashes[name], scope.entry)
+                            }
+                            scopes.put(name, scope)
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Veilar: could not read layout " + name, e)
+                        }
+                        scope.metrics.snapshotNs = System.nanoTime() - start
+                        telemetry.span("snapshot", "layout", start, scope.metrics.snapshotNs, name)
+                    } as Runnable)
+                }
+                joinAll(snapshots)
+
+                for (String name : pending) {
+                    LayoutManifest.Entry old = previous.layouts[name]
+                    if (old != null) changedIds.addAll(old.ids)
+                    if (scopes.containsKey(name)) changedIds.addAll(scopes[name].entry.ids)
+                }
+
+                pending = staleDependents(layouts.keySet(), processed, previous, changedIds)
+            }
+
+            telemetry.stage("snapshot", stage)
+
+            // One project-wide index: fresh snapshots for reprocessed layouts, manifest snapshots for the rest.
+            stage = telemetry.mark()
+            IdIndex index = new IdIndex()
+            layouts.keySet().each { name ->
+                if (scopes.containsKey(name)) index.add(name, scopes[name].entry.snapshot)
+                else if (!processed.contains(name)) index.add(name, previous.layouts[name].snapshot)
+            }
+            index.seal()
+            telemetry.stage("resolve", stage)
+
+            // Layouts only write assets named after themselves, so rewriting runs fully in parallel. Styles the
+            // previous compile already placed keep their ids, so a rewritten layout normally emits its final ids.
+            stage = telemetry.mark()
+            Map<String, LayoutManifest.Entry> results = new ConcurrentHashMap<>()
+            Map<String, Integer> knownStyleIds = StyleTable.idsOf(previous.layouts.values())
+            List<ForkJoinTask<?>> jobs = processed.collect { String name ->
+                pool.submit({
+                    LayoutScope scope = scopes[name]
+                    if (scope == null) return
+                    scope.index = index
+                    scope.styleIds = knownStyleIds
+                    scope.styleTable = styleTable
+                    long start = telemetry.mark()
+                    LayoutManifest.Entry entry = processFile(scope, layouts[name], new File(outputDir, name))
+                    telemetry.span("transpile", "layout", start, System.nanoTime() - start, name)
+                    telemetry.sampleHeap()
+                    results.put(name, entry)
+                } as Runnable)
+            }
+            joinAll(jobs)
+
+            // Style ids are payload hashes, so two styles can draw the same one. Ids are settled over every live
+            // style and any layout that emitted a different id is rewritten with the settled ones; no two styles
+            // ever share an app:styleId.
+            List<LayoutManifest.Entry> live = layouts.keySet().collect { String name -> results[name] ?: previous.layouts[name] }
+            Map<String, Integer> styleIds = StyleTable.assignIds(live)
+            Set<String> restyled = new TreeSet<>()
+            layouts.keySet().each { String name ->
+                LayoutManifest.Entry entry = results[name] ?: previous.layouts[name]
+                if (entry.styles.any { String id, String hex -> styleIds[hex] != Integer.parseInt(id) }) restyled.add(name)
+            }
+            joinAll(restyled.collect { String name ->
+                pool.submit({
+                    LayoutScope scope = new LayoutScope(layouts[name], colorDir, drawDir, shared, run)
+                    snapshotLayout(layouts[name], scope)
+                    scope.index = index
+                    scope.styleIds = styleIds
+                    scope.styleTable = styleTable
+                    results.put(name, processFile(scope, layouts[name], new File(outputDir, name)))
+                    scopes.put(name, scope)
+                } as Runnable)
+            })
+            processed.addAll(restyled)
+            telemetry.stage("rewrite", stage)
+
+            stage = telemetry.mark()
+
+            results.each { name, entry ->
+                entry.hash = hashes[name]
+                manifest.layouts.put(name, entry)
+            }
+
+            layouts.keySet().each { name ->
+                if (!processed.contains(name)) manifest.layouts.put(name, previous.layouts[name])
+            }
+
+            // Layouts that are gone leave no output behind.
+            outputDir.listFiles()?.each { if (!manifest.layouts.containsKey(it.name)) it.delete() }
+
+            // Generated assets are named by content and shared, so one is only removed once no layout uses it any more.
+            Set<String> liveShared = new HashSet<>()
+            int selectorUses = 0
+            manifest.layouts.values().each { entry ->
+                liveShared.addAll(entry.assets)
+                selectorUses += entry.selectorUses
+            }
+            [colorDir, drawDir].each { File dir ->
+                dir.listFiles()?.each { File file ->
+                    String asset = dir.name + "/" + file.name
+                    if (isGenerated(asset) && !liveShared.contains(asset)) file.delete()
+                }
+            }
+            int liveSelectors = liveShared.count { it.startsWith("color/") } as int
+
+            // Equal styles from different layouts share one id and collapse into one row.
+            Map<Integer, byte[]> styles = new TreeMap<>()
+            manifest.layouts.each { name, entry ->
+                entry.styles.each { String id, String hex ->
+                    byte[] payload = hex.decodeHex()
+                    byte[] existing = styles.putIfAbsent(Integer.parseInt(id), payload)
+                    if (existing != null && !Arrays.equals(existing, payload)) {
+                        throw new IllegalStateException("Veilar: style id " + id + " in " + name + " is held by two different styles")
+                    }
+                }
+            }
+            File tableFile = new File(assetsDir, StyleTable.assetOf(styleTable))
+            StyleTable.write(tableFile, styles)
+            tableFile.parentFile.listFiles()?.each { if (it != tableFile) it.delete() }
+
+            Map<String, String> generatedAssets = new TreeMap<>()
+            manifest.layouts.values().each { generatedAssets.putAll(it.report) }
+
+            manifest.save(manifestFile)
+            telemetry.stage("finish", stage)
+
+            writeBuildReport(assetsDir, generatedAssets, selectorUses, liveSelectors)
+            if (telemetryFile != null) {
+                long bytesWritten = tableFile.length() + manifestFile.length()
+                scopes.values().each { bytesWritten += it.metrics.bytesOut + it.metrics.assetBytes }
+                Map<String, Object> report = telemetryReport(telemetry, scopes, index, run, layouts.size(), processed.size(), workers, bytesWritten)
+                if (!telemetryFile.parentFile.exists()) telemetryFile.parentFile.mkdirs()
+                telemetryFile.setText(JsonOutput.prettyPrint(JsonOutput.toJson(report)), "UTF-8")
+            }
+            telemetry.writeTrace(traceFile)
+            println "Veilar: ${processed.size()} of ${layouts.size()} layout(s) transpiled in ${Math.round(Telemetry.millis(System.nanoTime() - telemetry.origin))} ms."
+
+        } catch (Exception e) {
+            // Some outputs may already be rewritten, so the next compile must not trust the old manifest either.
+            manifestFile.delete()
+            throw e
+        } finally {
+            pool.shutdown()
+            cache?.trim()
+        }
+    }
+
+    // Waits for every job, so none is still writing once a failure ends the compile, then rethrows the first failure
+    // as the job threw it. Read from another thread, ForkJoinTask hands out a copy of the exception wrapping the original.
+    static void joinAll(List<ForkJoinTask<?>> jobs) {
+        Throwable failure = null
+        for (ForkJoinTask<?> job : jobs) {
+            job.quietlyJoin()
+            Throwable e = job.exception
+            if (e == null) continue
+            if (e.cause != null && e.cause.class == e.class) e = e.cause
+            if (failure == null) failure = e
+            else failure.addSuppressed(e)
+        }
+        if (failure != null) throw failure
+    }
+
+    // Untouched layouts whose id: references reach a changed id are stale too. Their own ids join the changed set
+    // once they are snapshotted, so references that chain through them are caught on the next round.
+    static Set<String> staleDependents(Set<String> names, Set<String> processed, LayoutManifest previous, Set<String> changedIds) {
+        Set<String> stale = new TreeSet<>()
+        names.each { String name ->
+            if (!processed.contains(name) && previous.layouts[name].refs.any { changedIds.contains(it) }) stale.add(name)
+        }
+        return stale
+    }
+
+    static String cleanId(String rawId) {
+        return ID_PREFIX.matcher(rawId).replaceAll("").toLowerCase()
+    }
+
+    static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance()
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false)
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true)
+        return factory
+    }
+
+    // Every as9:src file the layouts reach, resolved as rewriteElement resolves it (through id: references too), so
+    // builds can declare them as inputs. A layout that does not parse is left for the compile to report.
+    static List<File> referencedSources(File inputDir) {
+        Map<String, File> layouts = new TreeMap<>()
+        inputDir.listFiles()?.each { File file -> if (file.name.endsWith(".xml")) layouts.put(file.name, file) }
+
+        IdIndex index = new IdIndex()
+        Map<String, List<Map<String, String>>> uses = new TreeMap<>()
+        layouts.each { String name, File file ->
+            try {
+                LayoutScope scope = new LayoutScope(file, null, null, null, null)
+                snapshotLayout(file, scope)
+                uses.put(name, srcAttributes(file))
+                index.add(name, scope.entry.snapshot)
+            } catch (Exception e) {}
+        }
+        index.seal()
+
+        Set<File> sources = new LinkedHashSet<>()
+        uses.each { String name, List<Map<String, String>> elements ->
+            LayoutScope scope = new LayoutScope(layouts[name], null, null, null, null)
+            scope.index = index
+            elements.each { Map<String, String> attrs ->
+                String path = resolveValue(attrs, "as9:src", scope, null)
+                if (path && !path.startsWith("id:")) sources.add(new File(path))
+            }
+        }
+        return new ArrayList<>(sources)
+    }
+
+    // The android:id and as9:src of every element that sets as9:src.
+    static List<Map<String, String>> srcAttributes(File inputFile) {
+        List<Map<String, String>> found = []
+        InputStream input = new BufferedInputStream(new FileInputStream(inputFile))
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input)
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue
+                Map<String, String> attrs = [:]
+                for (int i = 0; i < reader.attributeCount; i++) {
+                    String name = attributeName(reader, i)
+                    if (name == "android:id" || name == "as9:src") attrs.put(name, reader.getAttributeValue(i))
+                }
+                if (attrs.containsKey("as9:src")) found.add(attrs)
+            }
+        } finally {
+            reader.close()
+            input.close()
+        }
+        return found
+    }
+
+    static boolean isGenerated(String asset) {
+        return asset.startsWith("color/vsel_") || asset.startsWith("drawable/vshape_") || asset.startsWith("drawable/vsrc_")
+    }
+
+    static class LayoutScope {
+        final String fileName, name
+        final File colorDir, drawDir
+        final LayoutManifest.Entry entry = new LayoutManifest.Entry()
+        final Set<String> shared
+        final CompileRun run
+        final LayoutMetrics metrics = new LayoutMetrics()
+        IdIndex index
+        // Encoded style (hex) -> the id it has been given; styles not in it use their hash.
+        Map<String, Integer> styleIds = Collections.emptyMap()
+        int styleTable
+
+        LayoutScope(File inputFile, File colorDir, File drawDir, Set<String> shared, CompileRun run) {
+            this.fileName = inputFile.name
+            this.name = fileName.replaceAll("\\.xml\$", "")
+            this.colorDir = colorDir; this.drawDir = drawDir
+            this.shared = shared
+            this.run = run
+        }
+    }
+
+    // Per-layout cost of one compile. parse/serialize are the StAX reader/writer share of the streaming
+    // pass, resolve is id: lookups plus color and gradient math, and rewrite is the rest of the rule logic.
+    static class LayoutMetrics {
+        long snapshotNs, parseNs, resolveNs, rewriteNs, serializeNs
+        int nodes, attributes
+        long bytesIn, bytesOut, assetBytes
+
+        Map<String, Object> toJson() {
+            return [
+                    nodes      : nodes,
+                    attributes : attributes,
+                    bytes_in   : bytesIn,
+                    bytes_out  : bytesOut + assetBytes,
+                    ms         : [
+                            parse    : Telemetry.millis(parseNs),
+                            snapshot : Telemetry.millis(snapshotNs),
+                            resolve  : Telemetry.millis(resolveNs),
+                            rewrite  : Telemetry.millis(rewriteNs),
+                            serialize: Telemetry.millis(serializeNs)
+                    ]
+            ]
+        }
+    }
+
+    static class PendingElement {
+        String prefix, localName, namespace
+        List<String[]> namespaces = []
+        List<String[]> attributes = []
+
+        void write(XMLStreamWriter writer, boolean empty) {
+            if (empty) writer.writeEmptyElement(prefix, localName, namespace)
+            else writer.writeStartElement(prefix, localName, namespace)
+            for (String[] ns : namespaces) {
+                if (ns[0].isEmpty()) writer.writeDefaultNamespace(ns[1])
+                else writer.writeNamespace(ns[0], ns[1])
+            }
+            for (String[] attr : attributes) {
+                if (attr[0].isEmpty()) writer.writeAttribute(attr[2], attr[3])
+                else writer.writeAttribute(attr[0], attr[1], attr[2], attr[3])
+            }
+        }
+    }
+
+    static LayoutManifest.Entry processFile(LayoutScope scope, File inputFile, File outputFile) {
+        try {
+            rewriteLayout(inputFile, outputFile, scope)
+            return scope.entry
+
+        } catch (Exception e) {
+            throw new IllegalStateException("Veilar: could not transpile layout " + inputFile.name, e)
+        }
+    }
+
+    // Pre-pass: only the as9:* attributes of views with an android:id are kept, so memory tracks IDs, not nodes.
+    static void snapshotLayout(File inputFile, LayoutScope scope) {
+        InputStream input = new BufferedInputStream(new FileInputStream(inputFile))
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input)
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) continue
+
+                String viewId = null
+                Map<String, String> attrs = [:]
+                for (int i = 0; i < reader.attributeCount; i++) {
+                    String name = attributeName(reader, i)
+                    String value = reader.getAttributeValue(i)
+                    if (value.startsWith("id:")) scope.entry.refs.add(value.substring(3).trim().toLowerCase())
+                    if (name == "android:id") viewId = cleanId(value)
+                    else if (name.startsWith("as9:")) attrs.put(name, value)
+                }
+                if (viewId != null) {
+                    scope.entry.snapshot.put(viewId, attrs)
+                    scope.entry.ids.add(viewId)
+                }
+            }
+        } finally {
+            reader.close()
+            input.close()
+        }
+    }
+
+    // The layout streams into a temp file next to outputFile, which only replaces it when the bytes differ, so
+    // memory stays bounded by the element depth rather than the layout size.
+    static void rewriteLayout(File inputFile, File outputFile, LayoutScope scope) {
+        File temp = new File(outputFile.parentFile, "." + outputFile.name + ".tmp")
+        try {
+            streamLayout(inputFile, temp, scope)
+            scope.metrics.bytesIn = inputFile.length()
+            scope.metrics.bytesOut = temp.length()
+            Outputs.replaceIfChanged(temp, outputFile)
+        } finally {
+            // Already gone unless the rewrite failed.
+            temp.delete()
+        }
+    }
+
+    // Rewrite pass: events are copied straight from reader to writer, only start tags are held back
+    // by one event so childless elements can still be written as <Tag ... />.
+    static void streamLayout(File inputFile, File outputFile, LayoutScope scope) {
+        InputStream input = new BufferedInputStream(new FileInputStream(inputFile))
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(outputFile))
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input)
+        XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(output, "UTF-8")
+        Deque<String> tags = new ArrayDeque<>()
+        PendingElement pending = null
+        try {
+            writer.writeStartDocument("UTF-8", "1.0")
+            writer.writeCharacters("\n")
+
+            LayoutMetrics metrics = scope.metrics
+            while (reader.hasNext()) {
+                long parsed = System.nanoTime()
+                int event = reader.next()
+                long handled = System.nanoTime()
+                metrics.parseNs += handled - parsed
+                long ruleNs = metrics.rewriteNs + metrics.resolveNs
+                if (pending != null) {
+                    pending.write(writer, event == XMLStreamConstants.END_ELEMENT)
+                    pending = null
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        tags.pop()
+                        metrics.serializeNs += System.nanoTime() - handled
+                        continue
+                    }
+                }
+
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        pending = readElement(reader, tags, scope)
+                        break
+                    case XMLStreamConstants.END_ELEMENT:
+                        writer.writeEndElement()
+                        tags.pop()
+                        break
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.SPACE:
+                        if (!tags.isEmpty()) writer.writeCharacters(reader.text)
+                        break
+                    case XMLStreamConstants.CDATA:
+                        writer.writeCData(reader.text)
+                        break
+                    case XMLStreamConstants.COMMENT:
+                        writer.writeComment(reader.text)
+                        if (tags.isEmpty()) writer.writeCharacters("\n")
+                        break
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        writer.writeProcessingInstruction(reader.PITarget, reader.PIData)
+                        break
+                }
+                // Whatever the rules didn't spend on this event went to the writer.
+                metrics.serializeNs += (System.nanoTime() - handled) - (metrics.rewriteNs + metrics.resolveNs - ruleNs)
+            }
+            long flushed = System.nanoTime()
+            writer.writeEndDocument()
+            writer.flush()
+            metrics.serializeNs += System.nanoTime() - flushed
+        } finally {
+            writer.close()
+            output.close()
+            reader.close()
+            input.close()
+        }
+    }
+
+    static PendingElement readElement(XMLStreamReader reader, Deque<String> tags, LayoutScope scope) {
+        String parentTag = tags.peek()
+        String originalTag = reader.prefix ? reader.prefix + ":" + reader.localName : reader.localName
+
+        Map<String, String> attrs = new LinkedHashMap<>()
+        for (int i = 0; i < reader.attributeCount; i++) {
+            attrs.put(attributeName(reader, i), reader.getAttributeValue(i))
+        }
+        scope.metrics.nodes++
+        scope.metrics.attributes += reader.attributeCount
+
+        long start = System.nanoTime()
+        long resolveNs = scope.metrics.resolveNs
+        String tag = rewriteElement(originalTag, attrs, parentTag, scope)
+        scope.metrics.rewriteNs += (System.nanoTime() - start) - (scope.metrics.resolveNs - resolveNs)
+        tags.push(tag)
+
+        PendingElement el = new PendingElement()
+        if (tag == originalTag) {
+            el.prefix = reader.prefix ?: ""
+            el.localName = reader.localName
+            el.namespace = reader.namespaceURI ?: ""
+        } else {
+            el.prefix = ""
+            el.localName = tag
+            el.namespace = ""
+        }
+
+        for (int i = 0; i < reader.namespaceCount; i++) {
+            el.namespaces.add([reader.getNamespacePrefix(i) ?: "", reader.getNamespaceURI(i)] as String[])
+        }
+        if (parentTag == null) {
+            // Rewritten attributes use the android: and app: prefixes, so the root must declare both.
+            if (reader.getNamespaceURI("android") == null) el.namespaces.add(["android", ANDROID_NS] as String[])
+            if (reader.getNamespaceURI("app") == null) el.namespaces.add(["app", RES_AUTO_NS] as String[])
+        }
+
+        attrs.each { String name, String value ->
+            int colon = name.indexOf(':')
+            if (colon < 0) {
+                el.attributes.add(["", "", name, value] as String[])
+            } else {
+                String prefix = name.substring(0, colon)
+                String uri = reader.getNamespaceURI(prefix) ?: (prefix == "android" ? ANDROID_NS : RES_AUTO_NS)
+                el.attributes.add([prefix, uri, name.substring(colon + 1), value] as String[])
+            }
+        }
+        return el
+    }
+
+    static String attributeName(XMLStreamReader reader, int index) {
+        String prefix = reader.getAttributePrefix(index)
+        return prefix ? prefix + ":" + reader.getAttributeLocalName(index) : reader.getAttributeLocalName(index)
+    }
+
+    static String rewriteElement(String tag, Map<String, String> attrs, String parentTag, LayoutScope scope) {
+        boolean needsSwap = false
+        int parsedShapeId = 0 
+        GradientResolver.Result textGradient = null, bgGradient = null
+
+        String userId = attrs.containsKey("android:id") ?
+                cleanId(attrs.get("android:id")) :
+                "unnamed"
+
+        if (attrs.containsKey("as9:src")) {
+            String rawPath = resolveValue(attrs, "as9:src", scope, userId)
+            if (rawPath && !rawPath.isEmpty()) {
+                File srcFile = new File(rawPath)
+                String srcHash = LayoutManifest.hashOf(srcFile)
+                scope.entry.sources.put(rawPath, srcHash)
+                if (srcFile.exists()) {
+                    // Named by content, so the same file used by several views or layouts is copied once.
+                    String safeName = "vsrc_" + srcHash.substring(0, 12)
+                    String asset = safeName + getExtension(srcFile)
+                    if (scope.shared.add(asset)) {
+                        Outputs.writeIfChanged(new File(scope.drawDir, asset), srcFile.bytes)
+                        scope.metrics.assetBytes += srcFile.length()
+                    }
+                    scope.entry.assets.add("drawable/" + asset)
+
+                    attrs.put("android:background", "@drawable/" + safeName)
+                    attrs.remove("as9:src")
+                    attrs.remove("as9:shade")
+                    attrs.remove("as9:bgshade")
+                    attrs.remove("as9:gradient")
+                    attrs.remove("as9:bggradient")
+                    scope.entry.report.put(safeName, "Source: " + rawPath)
+                    needsSwap = true
+                } else {
+                    println "\u001B[33mVEILAR WARNING:\nSource file not found at: " + rawPath + ". ID: " + userId + " will have no background.\u001B[0m"
+                }
+            }
+        }
+
+        if (attrs.containsKey("as9:interaction")) {
+            String interaction = attrs.get("as9:interaction")
+            String baseShade = resolveValue(attrs, "as9:shade", scope, userId)
+
+            if (baseShade && (interaction.contains("dim") || interaction.contains("glow"))) {
+                String normalHex = resolveColor(baseShade, scope).toUpperCase()
+                float factor = interaction.contains("dim") ? 0.75f : 1.25f
+                String pressedHex = adjustBrightness(normalHex, factor)
+
+                // Named by content, so every view with the same normal/pressed pair shares one resource.
+                String selectorName = selectorName(normalHex, pressedHex)
+                if (scope.shared.add(selectorName)) {
+                    scope.metrics.assetBytes += generateColorSelector(scope.colorDir, selectorName, normalHex, pressedHex)
+                }
+                scope.entry.assets.add("color/" + selectorName + ".xml")
+                scope.entry.report.put(selectorName, normalHex + " -> " + pressedHex)
+                scope.entry.selectorUses++
+
+                String tagName = tag.toLowerCase()
+                if (tagName.contains("textview")) {
+                    attrs.put("android:textColor", "@color/" + selectorName)
+                } else {
+                    attrs.put("android:backgroundTint", "@color/" + selectorName)
+                }
+                attrs.remove("as9:shade")
+            } else if (interaction.contains("dim") || interaction.contains("glow")) {
+                println "\u001B[33mVEILAR WARNING:\nInteraction requires 'as9:shade' to calculate brightness. ID: " + userId + "\u001B[0m"
+            }
+
+            String flags = interactionFlags(interaction, userId)
+            if (flags) attrs.put("app:interactions", flags)
+            attrs.remove("as9:interaction")
+            needsSwap = true
+        }
+
+        if (attrs.containsKey("as9:shape")) {
+            String rawShape = resolveValue(attrs, "as9:shape", scope, userId)
+            if (rawShape) {
+                rawShape = rawShape.toLowerCase().trim()
+                int shapeId = 0
+                String param = "0"
+                String X = "100dp"; String Y = "50dp"
+
+                if (rawShape.startsWith("circle") || rawShape.startsWith("oval")) {
+                    shapeId = 1
+                    if (rawShape.contains(":")) {
+                        String dimsPart = rawShape.split(":")[1].trim()
+                        if (dimsPart.contains(",")) {
+                            String[] dim = dimsPart.split(",")
+                            if (dim.length > 0 && dim[0]) X = ensureUnit(dim[0])
+                            if (dim.length > 1 && dim[1]) Y = ensureUnit(dim[1])
+                        } else {
+                            X = ensureUnit(dimsPart); Y = X
+                        }
+                        attrs.put("android:layout_width", X)
+                        attrs.put("android:layout_height", Y)
+                    }
+                } else if (rawShape.startsWith("cut")) shapeId = 2
+                else if (rawShape.startsWith("pill")) shapeId = 3
+                else if (rawShape.startsWith("squircle")) shapeId = 4
+                else if (rawShape.startsWith("gon")) {
+                    shapeId = 5
+                    param = rawShape.contains(":") ? rawShape.split(":")[1].trim() : "5"
+                    try { Integer.parseInt(param) } catch(Exception e) {
+                        println "\u001B[33mVEILAR WARNING:\nInvalid polygon side count '" + param + "'. Defaulting to 5. ID: " + userId + "\u001B[0m"
+                        param = "5"
+                    }
+                }
+
+                parsedShapeId = shapeId
+                attrs.put("app:shapeBundle", "${shapeId}:${param}".toString())
+                attrs.remove("as9:shape")
+                needsSwap = true
+            }
+        }
+
+        if (attrs.containsKey("as9:radius")) {
+            attrs.put("app:radius", resolveValue(attrs, "as9:radius", scope, userId))
+            attrs.remove("as9:radius")
+            needsSwap = true
+        } else {
+            if (parsedShapeId == 2 || parsedShapeId == 4) {
+                attrs.put("app:radius", "16dp")
+            } else if (attrs.containsKey("as9:bggradient")) {
+                attrs.put("app:radius", "8dp")
+            }
+        }
+
+        if (attrs.containsKey("as9:gradient")) {
+            String rawValue = resolveValue(attrs, "as9:gradient", scope, userId)
+            if (rawValue) {
+                def res = resolveGradient(rawValue, scope)
+                if (res) attrs.put("app:gradient", res.bundle)
+                textGradient = res
+                attrs.remove("as9:gradient")
+                needsSwap = true
+            }
+        }
+
+        if (attrs.containsKey("as9:bggradient")) {
+            String rawValue = resolveValue(attrs, "as9:bggradient", scope, userId)
+            if (rawValue) {
+                def res = resolveGradient(rawValue, scope)
+                if (res) attrs.put("app:bggradient", res.bundle)
+                bgGradient = res
+                attrs.remove("as9:bggradient")
+                needsSwap = true
+            }
+        }
+
+        if (attrs.containsKey("as9:bgshade")) {
+            String rawValue = resolveValue(attrs, "as9:bgshade", scope, userId)
+            if (rawValue) {
+                attrs.put("app:bgshade", resolveColor(rawValue, scope))
+                attrs.remove("as9:bgshade")
+                needsSwap = true
+            }
+        }
+
+        if (attrs.containsKey("as9:render")) {
+            String mode = attrs.get("as9:render").toLowerCase().trim()
+            if (mode == "lean" || mode == "drawable") {
+                attrs.put("app:renderMode", mode)
+            } else {
+                println "\u001B[33mVEILAR WARNING:\nUnknown render mode '" + mode + "'. Expected 'lean' or 'drawable'. ID: " + userId + "\u001B[0m"
+            }
+            attrs.remove("as9:render")
+        }
+
+        processSizing(attrs, parentTag, userId)
+
+        if (needsSwap) {
+            String originalTag = tag
+            String newTag = originalTag
+
+            if (originalTag.contains("ConstraintLayout")) newTag = "com.veilar.VeilarLayout"
+            else if (originalTag.contains("LinearLayout")) newTag = "com.veilar.VeilarLayout" 
+            else if (originalTag == "Button" || originalTag.contains("Button")) newTag = "com.veilar.VeilarButton"
+            else if (originalTag == "TextView") newTag = "com.veilar.VeilarTextView"
+
+            if (newTag != originalTag && bakeStaticShape(attrs, newTag, bgGradient, scope)) newTag = originalTag
+            if (newTag != originalTag) packStyle(attrs, textGradient, bgGradient, scope)
+            tag = newTag
+        }
+        // Only the Veilar views know the render mode; baked and framework views keep their own drawing.
+        if (!tag.startsWith("com.veilar.")) attrs.remove("app:renderMode")
+
+        if (attrs.containsKey("as9:shade")) {
+            String hex = resolveColor(resolveValue(attrs, "as9:shade", scope, userId), scope)
+            String tagName = tag.toLowerCase()
+            if (tagName.contains("textview")) attrs.put("android:textColor", hex)
+            else if (tagName.contains("button")) attrs.put("android:backgroundTint", hex)
+            else attrs.put("android:background", hex)
+            attrs.remove("as9:shade")
+        }
+
+        return tag
+    }
+
+    // as9:interaction as app:interactions flag names ("shrink|dim"), which aapt stores as one int bitmask. Effects
+    // may be separated by commas, whitespace or '|', the form written here.
+    static String interactionFlags(String interaction, String userId) {
+        List<String> flags = []
+        for (String raw : interaction.split("[,|\\s]+")) {
+            String effect = raw.trim().toLowerCase()
+            if (!effect) continue
+            if (INTERACTIONS.contains(effect)) {
+                if (!flags.contains(effect)) flags.add(effect)
+            } else {
+                println "\u001B[33mVEILAR WARNING:\nUnknown interaction '" + effect + "'. Expected one of " + INTERACTIONS.join(", ") + ". ID: " + userId + "\u001B[0m"
+            }
+        }
+        return flags.join("|")
+    }
+
+    // Swaps the string bundles of a Veilar view for one app:styleId into the binary style table.
+    static void packStyle(Map<String, String> attrs, GradientResolver.Result textGradient, GradientResolver.Result bgGradient, LayoutScope scope) {
+        List<String> packed = ["app:gradient", "app:bggradient", "app:bgshade", "app:shapeBundle", "app:radius"]
+        if (!packed.any { attrs.containsKey(it) }) return
+        // Bundles that did not come from the resolvers (e.g. hand-written app: attributes) stay as strings.
+        if (attrs.containsKey("app:gradient") && textGradient == null) return
+        if (attrs.containsKey("app:bggradient") && bgGradient == null) return
+
+        byte[] payload = StyleTable.encode(textGradient, bgGradient, attrs.get("app:bgshade"), attrs.get("app:shapeBundle"), attrs.get("app:radius"))
+        if (payload == null) return
+        String hex = payload.encodeHex().toString()
+        Integer id = scope.styleIds.get(hex)
+        if (id == null) id = StyleTable.idOf(payload)
+        scope.entry.styles.put(String.valueOf(id), hex)
+        packed.each { attrs.remove(it) }
+        attrs.put("app:styleId", String.valueOf(id))
+        attrs.put("app:styleTable", String.valueOf(scope.styleTable))
+    }
+
+    // A fixed-size view whose only Veilar feature is a static cut/squircle/polygon fill gets a baked
+    // vector background and keeps its framework tag, so nothing is left for the runtime to compute.
+    static boolean bakeStaticShape(Map<String, String> attrs, String veilarTag, GradientResolver.Result bgGradient, LayoutScope scope) {
+        String bundle = attrs.get("app:shapeBundle")
+        if (bundle == null || attrs.containsKey("app:interactions") || attrs.containsKey("app:gradient")) return false
+        if (bgGradient == null && !attrs.containsKey("app:bgshade")) return false
+
+        String[] shape = bundle.split(":")
+        int shapeId = Integer.parseInt(shape[0])
+        Float w = ShapeVectorizer.fixedDp(attrs.get("android:layout_width"))
+        Float h = ShapeVectorizer.fixedDp(attrs.get("android:layout_height"))
+        if (!ShapeVectorizer.supports(shapeId) || w == null || h == null || w <= 0 || h <= 0) return false
+
+        Float r = attrs.containsKey("app:radius") ? ShapeVectorizer.fixedDp(ensureUnit(attrs.get("app:radius"))) : 0f
+        if (r == null) return false
+
+        boolean button = veilarTag == "com.veilar.VeilarButton"
+        String path = ShapeVectorizer.pathData(shapeId, Integer.parseInt(shape[1]), w, h, r)
+        String xml = ShapeVectorizer.drawableXml(path, bgGradient, attrs.get("app:bgshade"), w, h, button)
+        String name = ShapeVectorizer.nameOf(xml)
+        if (scope.shared.add(name)) {
+            Outputs.writeIfChanged(new File(scope.drawDir, name + ".xml"), xml)
+            scope.metrics.assetBytes += xml.length()
+        }
+        scope.entry.assets.add("drawable/" + name + ".xml")
+        scope.entry.report.put(name, "Static shape: " + ShapeVectorizer.NAMES[shapeId] + " " + ShapeVectorizer.num(w) + "x" + ShapeVectorizer.num(h) + "dp")
+
+        attrs.put("android:background", "@drawable/" + name)
+        ["app:shapeBundle", "app:radius", "app:bggradient", "app:bgshade"].each { attrs.remove(it) }
+        if (button) {
+            // Mirror what VeilarButton.init() strips from the framework button style.
+            attrs.put("android:elevation", "0dp")
+            attrs.put("android:stateListAnimator", "@null")
+            if (!attrs.keySet().any { it.startsWith("android:padding") }) attrs.put("android:padding", "0dp")
+            // Material themes inflate Button as MaterialButton, which would tint the baked shape with colorPrimary.
+            attrs.put("app:backgroundTint", "@null")
+        }
+        return true
+    }
+
+    static void processSizing(Map<String, String> attrs, String parentTag, String userId) {
+        if (attrs.containsKey("as9:size")) {
+            String size = attrs.get("as9:size")
+            attrs.put("as9:width", size)
+            attrs.put("as9:height", size)
+            attrs.remove("as9:size")
+        }
+        if (parentTag != null) {
+            String pName = parentTag
+            boolean isConstraint = pName.contains("ConstraintLayout") || pName.contains("VeilarLayout")
+            boolean isLinear = pName.contains("LinearLayout")
+
+            if (attrs.containsKey("as9:width")) {
+                String val = attrs.get("as9:width")
+                if (val.contains("%")) {
+                    String decimal = convertToDecimal(val)
+                    if (isConstraint) {
+                        attrs.put("android:layout_width", "0dp")
+                        attrs.put("app:layout_constraintWidth_percent", decimal)
+                    } else if (isLinear) {
+                        attrs.put("android:layout_width", "0dp")
+                        attrs.put("android:layout_weight", decimal)
+                    } else {
+                        println "\u001B[33mVEILAR WARNING:\nPercent-based width for ID: " + userId + " requires ConstraintLayout or LinearLayout.\u001B[0m"
+                    }
+                } else {
+                    attrs.put("android:layout_width", ensureUnit(val))
+                }
+                attrs.remove("as9:width")
+            }
+            if (attrs.containsKey("as9:height")) {
+                String val = attrs.get("as9:height")
+                if (val.contains("%")) {
+                    String decimal = convertToDecimal(val)
+                    if (isConstraint) {
+                        attrs.put("android:layout_height", "0dp")
+                        attrs.put("app:layout_constraintHeight_percent", decimal)
+                    } else if (isLinear) {
+                        attrs.put("android:layout_height", "0dp")
+                        attrs.put("android:layout_weight", decimal)
+                    } else {
+                        println "\u001B[33mVEILAR WARNING:\nPercent-based height for ID: " + userId + " requires ConstraintLayout or LinearLayout.\u001B[0m"
+                    }
+                } else {
+                    attrs.put("android:layout_height", ensureUnit(val))
+                }
+                attrs.remove("as9:height")
+            }
+        }
+    }
+
+    static String resolveValue(Map<String, String> current, String attrName, LayoutScope scope, String userId) {
+        long start = System.nanoTime()
+        try {
+            String val = current.get(attrName)
+
+            if ((!val || val.isEmpty()) && current.containsKey("android:id")) {
+                String id = cleanId(current.get("android:id"))
+                val = scope.index.declared(scope.fileName, id, attrName)
+            }
+
+            if (val && val.startsWith("id:")) {
+                String targetId = val.substring(3).trim().toLowerCase()
+                String owner = scope.index.owner(scope.fileName, targetId)
+                if (owner != null && scope.index.declared(owner, targetId, attrName)) {
+                    return scope.index.resolve(owner, targetId, attrName)
+                }
+            }
+            return val
+        } finally {
+            scope.metrics.resolveNs += System.nanoTime() - start
+        }
+    }
+
+    static String resolveColor(String raw, LayoutScope scope) {
+        long start = System.nanoTime()
+        try {
+            return scope.run.colors.resolve(raw)
+        } finally {
+            scope.metrics.resolveNs += System.nanoTime() - start
+        }
+    }
+
+    static GradientResolver.Result resolveGradient(String raw, LayoutScope scope) {
+        long start = System.nanoTime()
+        try {
+            return scope.run.gradients.resolve(raw)
+        } finally {
+            scope.metrics.resolveNs += System.nanoTime() - start
+        }
+    }
+
+    static String getExtension(File file) {
+        String name = file.getName()
+        int lastDot = name.lastIndexOf('.')
+        return (lastDot == -1) ? "" : name.substring(lastDot)
+    }
+
+    static Map<String, Object> telemetryReport(Telemetry telemetry, Map<String, LayoutScope> scopes, IdIndex index,
+                                               CompileRun run, int layoutCount, int transpiled, int workers, long bytesWritten) {
+        Map<String, Object> stages = new LinkedHashMap<>()
+        telemetry.stages.each { name, nanos -> stages.put(name, Telemetry.millis(nanos)) }
+        stages.put("total", Telemetry.millis(System.nanoTime() - telemetry.origin))
+
+        // Summed over layouts (and worker threads), so these can exceed the wall-clock stages.
+        LayoutMetrics sum = new LayoutMetrics()
+        Map<String, Object> perLayout = new TreeMap<>()
+        scopes.each { name, scope ->
+            LayoutMetrics m = scope.metrics
+            sum.parseNs += m.parseNs; sum.snapshotNs += m.snapshotNs; sum.resolveNs += m.resolveNs
+            sum.rewriteNs += m.rewriteNs; sum.serializeNs += m.serializeNs
+            sum.nodes += m.nodes; sum.attributes += m.attributes
+            sum.bytesIn += m.bytesIn; sum.bytesOut += m.bytesOut; sum.assetBytes += m.assetBytes
+            perLayout.put(name, m.toJson())
+        }
+
+        return [
+                workers        : workers,
+                layouts        : [total: layoutCount, transpiled: transpiled, up_to_date: layoutCount - transpiled],
+                stages_ms      : stages,
+                phases_ms      : sum.toJson().ms,
+                nodes          : sum.nodes,
+                attributes     : sum.attributes,
+                bytes_written  : bytesWritten,
+                heap_bytes     : telemetry.heapReport(),
+                caches         : [
+                        color   : [hits: run.colors.lookups.get() - run.colors.misses.get(), misses: run.colors.misses.get()],
+                        gradient: [hits: run.gradients.lookups.get() - run.gradients.misses.get(), misses: run.gradients.misses.get()],
+                        id_index: [hits: index.memoHits.get(), misses: index.lookups.get() - index.memoHits.get()],
+                        snapshot: [hits: run.snapshotHits.get(), misses: run.snapshotLookups.get() - run.snapshotHits.get()]
+                ],
+                per_layout     : perLayout
+        ]
+    }
+
+    static void writeBuildReport(File assetsDir, Map<String, String> generatedAssets, int selectorUses, int uniqueSelectors) {
+        Map<String, Object> report = new LinkedHashMap<>()
+        report.put("generated_assets", generatedAssets)
+        report.put("selector_dedup", [references: selectorUses, unique: uniqueSelectors, deduplicated: selectorUses - uniqueSelectors])
+        Outputs.writeIfChanged(new File(assetsDir, "veilar_report.json"), JsonOutput.prettyPrint(JsonOutput.toJson(report)))
+    }
+
+    static String adjustBrightness(String hex, float factor) {
+        try {
+            int color = Long.parseLong(hex.replace("#", ""), 16).intValue()
+            int a = (hex.length() > 7) ? (color >> 24) & 0xFF : 0xFF
+            int r = Math.min(255, (int)(((color >> 16) & 0xFF) * factor))
+            int g = Math.min(255, (int)(((color >> 8) & 0xFF) * factor))
+            int b = Math.min(255, (int)((color & 0xFF) * factor))
+            return String.format("#%02X%02X%02X%02X", a, r, g, b)
+        } catch (Exception e) { return hex }
+    }
+
+    static String selectorName(String normal, String pressed) {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest((normal + "|" + pressed).getBytes("UTF-8"))
+        return "vsel_" + digest.encodeHex().toString().substring(0, 12)
+    }
+
+    static long generateColorSelector(File dir, String name, String normal, String pressed) {
+        String xml = """<?xml version="1.0" encoding="utf-8"?>
+<selector xmlns:android="http://schemas.android.com/apk/res/android">
+    <item android:state_pressed="true" android:color="${pressed}" />
+    <item android:color="${normal}" />
+</selector>"""
+        Outputs.writeIfChanged(new File(dir, "${name}.xml"), xml)
+        return xml.length()
+    }
+
+    static String ensureUnit(String val) {
+        if (!val) return "wrap_content"
+        val = val.trim()
+        return (val.endsWith("dp") || val.endsWith("px") || val.endsWith("%") || val == "wrap_content" || val == "match_parent") ? val : "${val}dp"
+    }
+
+    static String convertToDecimal(String percentStr) {
+        if (!percentStr.contains("%")) return percentStr
+        return String.valueOf(Float.parseFloat(percentStr.replace("%", "")) / 100.0f)
+   }
+}
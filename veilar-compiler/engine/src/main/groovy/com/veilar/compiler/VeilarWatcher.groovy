@@ -0,0 +1,105 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.nio.file.FileSystems
+import java.nio.file.Path
+import java.nio.file.StandardWatchEventKinds
+import java.nio.file.WatchEvent
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+import java.util.concurrent.TimeUnit
+
+// Re-transpiles layouts as they are saved, until the thread is interrupted. Every pass is an ordinary incremental
+// compile on warm state, so only the saved layouts (and those whose id: references or as9:src files reach them)
+// are rewritten, in place in the generated res/ directory.
+@CompileStatic
+class VeilarWatcher {
+    // Editors often save in several writes (truncate, write, rename); events this close together are one save.
+    static final long SETTLE_MS = 25
+
+    final File inputDir, resDir, assetsDir, manifestFile
+    final String module
+    final int workers
+    final CompilerCache cache
+    final Path layoutPath
+    final Map<Path, WatchKey> watched = [:]
+    Set<Path> sources = new HashSet<>()
+
+    VeilarWatcher(File inputDir, File resDir, File assetsDir, File manifestFile, String module, int workers, CompilerCache cache) {
+        this.inputDir = inputDir; this.resDir = resDir; this.assetsDir = assetsDir; this.manifestFile = manifestFile
+        this.module = module
+        this.workers = workers
+        this.cache = cache
+        this.layoutPath = inputDir.toPath().toAbsolutePath().normalize()
+    }
+
+    void watch() {
+        WatchService service = FileSystems.default.newWatchService()
+        try {
+            compile()
+            register(service)
+            println "Veilar: Watching ${inputDir} and ${watched.size() - 1} as9:src folder(s). Stop with Ctrl+C."
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take()
+                boolean relevant = drain(key)
+                while ((key = service.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= drain(key)
+                }
+                if (relevant) {
+                    compile()
+                    register(service)
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt()
+        } finally {
+            service.close()
+        }
+    }
+
+    // A layout that doesn't transpile is reported and the watch goes on; saving a fix compiles again.
+    private void compile() {
+        try {
+            VeilarEngine.run(inputDir, resDir, assetsDir, manifestFile, module, workers, null, null, cache)
+        } catch (Exception e) {
+            e.printStackTrace()
+        }
+    }
+
+    // Layouts can start or stop referencing as9:src files, so the folders are re-synced after each compile.
+    private void register(WatchService service) {
+        sources = new HashSet<>()
+        Set<Path> dirs = new HashSet<>([layoutPath])
+        VeilarEngine.referencedSources(inputDir).each { File file ->
+            Path path = file.toPath().toAbsolutePath().normalize()
+            sources.add(path)
+            if (path.parent != null && path.parent.toFile().isDirectory()) dirs.add(path.parent)
+        }
+
+        watched.keySet().findAll { !dirs.contains(it) }.each { watched.remove(it).cancel() }
+        dirs.each { Path dir ->
+            if (!watched.containsKey(dir)) {
+                watched.put(dir, dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE))
+            }
+        }
+    }
+
+    // True when the key reports a layout XML or a referenced as9:src file (or lost events to an overflow).
+    private boolean drain(WatchKey key) {
+        boolean relevant = false
+        Path dir = (Path) key.watchable()
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                relevant = true
+                continue
+            }
+            Path file = dir.resolve((Path) event.context())
+            if ((dir == layoutPath && file.fileName.toString().endsWith(".xml")) || sources.contains(file)) relevant = true
+        }
+        key.reset()
+        return relevant
+    }
+}
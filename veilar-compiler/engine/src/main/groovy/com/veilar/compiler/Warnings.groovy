@@ -0,0 +1,44 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import java.util.concurrent.ConcurrentHashMap
+
+// Resolver warnings. Memoized values carry the warnings raised while computing them, so a value reused from an
+// earlier compile (see CompilerCache) still reports its problems, once per compile. Each compile has its own
+// instance; capturing is per thread, so compiles running side by side never collect each other's warnings.
+@CompileStatic
+class Warnings {
+    private static final ThreadLocal<List<String>> capture = new ThreadLocal<>()
+    private final Set<String> reported = ConcurrentHashMap.newKeySet()
+
+    static void warn(String message) {
+        List<String> sink = capture.get()
+        if (sink != null) sink.add(message)
+        else println "\u001B[33mVEILAR WARNING:\n${message}\u001B[0m"
+    }
+
+    // Runs work with its warnings collected into sink instead of printed.
+    static <T> T collect(List<String> sink, Closure<T> work) {
+        List<String> outer = capture.get()
+        capture.set(sink)
+        try {
+            return work.call()
+        } finally {
+            capture.set(outer)
+        }
+    }
+
+    // Reports memoized warnings to the enclosing computation if there is one, otherwise prints those not yet shown.
+    void replay(List<String> warnings) {
+        if (warnings.isEmpty()) return
+        List<String> sink = capture.get()
+        if (sink != null) {
+            sink.addAll(warnings)
+            return
+        }
+        for (String message : warnings) {
+            if (reported.add(message)) println "\u001B[33mVEILAR WARNING:\n${message}\u001B[0m"
+        }
+    }
+}
@@ -0,0 +1,35 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+@CompileStatic
+class CompileRunTest {
+
+    @Test
+    void runsSharingACacheKeepTheirOwnCounters() {
+        CompilerCache cache = new CompilerCache()
+        CompileRun first = new CompileRun(cache)
+        CompileRun second = new CompileRun(cache)
+
+        assertEquals("#FF0000", first.colors.resolve("red"))
+        assertNotNull(first.gradients.resolve("red:0;blue:100|linear|45"))
+        // The second module reuses the memo, but counts only its own lookups.
+        assertEquals("#FF0000", second.colors.resolve("red"))
+        assertEquals(1L, second.colors.lookups.get())
+        assertEquals(0L, second.colors.misses.get())
+        assertEquals(0L, second.gradients.lookups.get())
+        assertEquals(2L, first.colors.misses.get())
+    }
+
+    @Test
+    void runsWithoutACacheStartCold() {
+        new CompileRun(null).colors.resolve("red")
+        CompileRun next = new CompileRun(null)
+        next.colors.resolve("red")
+        assertEquals(1L, next.colors.misses.get())
+    }
+}
@@ -0,0 +1,56 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+@CompileStatic
+class IdIndexTest {
+
+    @Test
+    void resolvesChainsAcrossLayouts() {
+        IdIndex index = new IdIndex()
+        index.add("a.xml", [brand: ["as9:shade": "red"]])
+        index.add("b.xml", [copy: ["as9:shade": "id:brand"], copy2: ["as9:shade": "id:copy"]])
+        index.seal()
+
+        assertEquals("red", index.resolve("b.xml", "copy", "as9:shade"))
+        assertEquals("red", index.resolve("b.xml", "copy2", "as9:shade"))
+        assertEquals("a.xml", index.owner("b.xml", "brand"))
+    }
+
+    @Test
+    void localIdsShadowOtherLayouts() {
+        IdIndex index = new IdIndex()
+        index.add("a.xml", [brand: ["as9:shade": "red"]])
+        index.add("b.xml", [brand: ["as9:shade": "blue"], copy: ["as9:shade": "id:brand"]])
+        index.seal()
+
+        assertEquals("blue", index.resolve("b.xml", "copy", "as9:shade"))
+    }
+
+    @Test
+    void cyclesResolveToNothing() {
+        IdIndex index = new IdIndex()
+        index.add("a.xml", [x: ["as9:shade": "id:y"], y: ["as9:shade": "id:z"], z: ["as9:shade": "id:x"],
+                            tail: ["as9:shade": "id:x"]])
+        index.add("b.xml", [self: ["as9:bgshade": "id:self"]])
+        index.seal()
+
+        assertNull(index.resolve("a.xml", "x", "as9:shade"))
+        assertNull(index.resolve("a.xml", "y", "as9:shade"))
+        assertNull(index.resolve("a.xml", "tail", "as9:shade"))
+        assertNull(index.resolve("b.xml", "self", "as9:bgshade"))
+    }
+
+    @Test
+    void brokenReferencesResolveToNothing() {
+        IdIndex index = new IdIndex()
+        index.add("a.xml", [copy: ["as9:shade": "id:missing"]])
+        index.seal()
+
+        assertNull(index.resolve("a.xml", "copy", "as9:shade"))
+    }
+}
@@ -0,0 +1,241 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler
+
+import groovy.transform.CompileStatic
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import static org.junit.Assert.*
+
+// End-to-end compiles over small layout sets, checking the guarantees incremental and parallel builds rely on.
+@CompileStatic
+class VeilarEngineTest {
+
+    static final String HEADER = '<?xml version="1.0" encoding="utf-8"?>\n' +
+            '<LinearLayout xmlns:android="http://schemas.android.com/apk/res/android"' +
+            ' xmlns:as9="http://schemas.android.com/apk/res-auto"' +
+            ' android:layout_width="match_parent" android:layout_height="match_parent">\n'
+    static final String FOOTER = '</LinearLayout>\n'
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder()
+
+    File layoutDir
+
+    @Before
+    void setUp() {
+        layoutDir = tmp.newFolder("layout")
+    }
+
+    @Test
+    void parallelOutputIsByteIdenticalToSerial() {
+        for (int l = 0; l < 12; l++) {
+            StringBuilder views = new StringBuilder()
+            for (int v = 0; v < 20; v++) {
+                String id = "v_${l}_${v}"
+                String shade = v > 0 && v % 4 != 0 ? "id:v_${l}_${v - 1}" : ["red", "teal_dark+amber", "#3366FF"][v % 3]
+                views.append("    <${["Button", "TextView", "LinearLayout"][v % 3]} android:id=\"@+id/${id}\" as9:shade=\"${shade}\"")
+                if (v % 2 == 0) views.append(' as9:bggradient="red:0;blue:100|linear|45"')
+                if (v % 3 == 0) views.append(' as9:interaction="shrink, dim"')
+                if (v % 5 == 0) views.append(' as9:shape="squircle" as9:width="120" as9:height="48"')
+                else if (v % 7 == 0) views.append(' as9:shape="gon:6"')
+                // Reaches into the previous layout, so the index has to span files.
+                if (l > 0 && v == 19) views.append(" as9:bgshade=\"id:v_${l - 1}_0\"")
+                views.append(' />\n')
+            }
+            layout("screen_${l}.xml", views.toString())
+        }
+
+        File serial = compile(1, "serial")
+        File parallel = compile(8, "parallel")
+
+        Map<String, byte[]> expected = contents(serial)
+        Map<String, byte[]> actual = contents(parallel)
+        assertEquals(expected.keySet(), actual.keySet())
+        expected.each { String path, byte[] bytes -> assertArrayEquals(path, bytes, actual[path]) }
+        assertTrue(expected.keySet().any { it.startsWith("res/color/vsel_") })
+    }
+
+    @Test
+    void layoutsReferencingAChangedIdAreRebuilt() {
+        layout("a.xml", '    <TextView android:id="@+id/brand" as9:shade="red" />\n')
+        layout("b.xml", '    <TextView android:id="@+id/copy" as9:shade="id:brand" />\n')
+        // Only reaches a.xml through b.xml.
+        layout("c.xml", '    <TextView android:id="@+id/copy2" as9:shade="id:copy" />\n')
+        File out = compile(2, "out")
+        assertTrue(output(out, "b.xml").contains('android:textColor="#FF0000"'))
+        assertTrue(output(out, "c.xml").contains('android:textColor="#FF0000"'))
+
+        layout("a.xml", '    <TextView android:id="@+id/brand" as9:shade="blue" />\n')
+        compile(2, "out")
+        assertTrue(output(out, "b.xml").contains('android:textColor="#0000FF"'))
+        assertTrue(output(out, "c.xml").contains('android:textColor="#0000FF"'))
+    }
+
+    @Test
+    void deletingALayoutRebuildsItsDependents() {
+        layout("a.xml", '    <TextView android:id="@+id/brand" as9:shade="red" />\n')
+        layout("b.xml", '    <TextView android:id="@+id/copy" as9:shade="id:brand" />\n')
+        File out = compile(2, "out")
+        assertTrue(output(out, "b.xml").contains('android:textColor="#FF0000"'))
+
+        new File(layoutDir, "a.xml").delete()
+        compile(2, "out")
+        assertFalse(output(out, "b.xml").contains('#FF0000'))
+    }
+
+    @Test
+    void unchangedLayoutsAreNotRewritten() {
+        layout("a.xml", '    <TextView android:id="@+id/brand" as9:shade="red" />\n')
+        layout("b.xml", '    <TextView android:id="@+id/other" as9:shade="green" />\n')
+        File out = compile(2, "out")
+        File b = new File(out, "res/layout/b.xml")
+        b.setLastModified(1000L)
+
+        layout("a.xml", '    <TextView android:id="@+id/brand" as9:shade="blue" />\n')
+        compile(2, "out")
+        assertEquals(1000L, b.lastModified())
+    }
+
+    @Test
+    void staleOutputsAreSwept() {
+        String dim = '    <Button android:id="@+id/go" as9:shade="red" as9:interaction="dim" />\n'
+        layout("a.xml", dim)
+        layout("b.xml", dim)
+        File out = compile(2, "out")
+        File colors = new File(out, "res/color")
+        assertEquals(1, colors.list().length)
+
+        // The selector is shared, so it stays as long as one layout still uses it.
+        new File(layoutDir, "a.xml").delete()
+        compile(2, "out")
+        assertFalse(new File(out, "res/layout/a.xml").exists())
+        assertEquals(1, colors.list().length)
+
+        layout("b.xml", '    <Button android:id="@+id/go" as9:shade="red" />\n')
+        compile(2, "out")
+        assertEquals(0, colors.list().length)
+        assertTrue(new File(out, "res/layout/b.xml").exists())
+    }
+
+    @Test
+    void collidingStylesGetDistinctIds() {
+        // Two solid backgrounds whose payloads share the same 31-bit hash.
+        byte[] first = StyleTable.encode(null, null, "#002C66", null, null)
+        byte[] second = StyleTable.encode(null, null, "#005B14", null, null)
+        assertEquals(StyleTable.idOf(first), StyleTable.idOf(second))
+
+        layout("b.xml", '    <TextView android:id="@+id/tb" as9:bgshade="#005B14" />\n')
+        File out = compile(2, "out")
+        assertEquals(String.valueOf(StyleTable.idOf(second)), styleId(output(out, "b.xml")))
+
+        // #002C66 sorts first, so it takes the hash and the untouched b.xml is rewritten with the next id.
+        layout("a.xml", '    <TextView android:id="@+id/ta" as9:bgshade="#002C66" />\n')
+        compile(2, "out")
+        assertEquals(String.valueOf(StyleTable.idOf(first)), styleId(output(out, "a.xml")))
+        assertEquals(String.valueOf(StyleTable.idOf(first) + 1), styleId(output(out, "b.xml")))
+        assertEquals(2, styleRows(table(out, ":app")))
+
+        // A clean compile settles on the same ids.
+        File clean = compile(2, "clean")
+        assertArrayEquals(new File(out, "res/layout/b.xml").bytes, new File(clean, "res/layout/b.xml").bytes)
+    }
+
+    @Test
+    void eachModuleWritesItsOwnStyleTable() {
+        layout("a.xml", '    <TextView android:id="@+id/ta" as9:bgshade="#336699" />\n')
+        File out = new File(tmp.root, "out")
+        VeilarEngine.run(layoutDir, new File(out, "res"), new File(out, "assets"), new File(out, "layout-manifest.json"), ":lib", 2, null)
+        assertTrue(output(out, "a.xml").contains('app:styleTable="' + StyleTable.tableIdOf(":lib") + '"'))
+        assertEquals(1, styleRows(table(out, ":lib")))
+
+        // Moving the outputs to another module rewrites them against its table and drops the old one.
+        compile(2, "out")
+        assertTrue(output(out, "a.xml").contains('app:styleTable="' + StyleTable.tableIdOf(":app") + '"'))
+        assertEquals(1, styleRows(table(out, ":app")))
+        assertFalse(table(out, ":lib").exists())
+    }
+
+    @Test
+    void bakedButtonsKeepTheirShapeUntinted() {
+        layout("a.xml", '    <Button android:id="@+id/go" as9:bggradient="red:0;blue:100|linear|45" as9:shape="squircle"' +
+                ' as9:width="120" as9:height="48" />\n')
+        File out = compile(2, "out")
+        String xml = output(out, "a.xml")
+        assertTrue(xml.contains('android:background="@drawable/vshape_'))
+        assertTrue(xml.contains('app:backgroundTint="@null"'))
+    }
+
+    @Test
+    void interactionsAcceptEverySeparator() {
+        assertEquals("shrink|dim", VeilarEngine.interactionFlags("shrink|dim", "go"))
+        assertEquals("shrink|dim|vibe", VeilarEngine.interactionFlags("shrink, dim vibe", "go"))
+    }
+
+    @Test
+    void sourcesAreFoundThroughQuotesAndIdReferences() {
+        File logo = tmp.newFile("logo.png")
+        File art = tmp.newFile("art.png")
+        layout("a.xml", "    <ImageView android:id='@+id/logo' as9:src='${logo.path}' />\n")
+        layout("b.xml", '    <ImageView android:id="@+id/copy" as9:src="id:logo" />\n' +
+                "    <ImageView as9:src=\"${art.path}\" />\n")
+
+        assertEquals([logo, art] as Set, VeilarEngine.referencedSources(layoutDir) as Set)
+    }
+
+    @Test
+    void failedLayoutFailsTheCompileAndDropsTheManifest() {
+        layout("a.xml", '    <TextView android:id="@+id/brand" as9:shade="red" />\n')
+        File out = compile(2, "out")
+        File manifest = new File(out, "layout-manifest.json")
+        assertTrue(manifest.exists())
+
+        new File(layoutDir, "broken.xml").text = HEADER + '    <Button as9:shade="red">\n' + FOOTER
+        try {
+            compile(2, "out")
+            fail("Expected the compile to fail")
+        } catch (IllegalStateException e) {
+            assertTrue(e.message.contains("broken.xml"))
+        }
+        assertFalse(manifest.exists())
+    }
+
+    private void layout(String name, String views) {
+        new File(layoutDir, name).text = HEADER + views + FOOTER
+    }
+
+    private File compile(int workers, String name) {
+        File out = new File(tmp.root, name)
+        VeilarEngine.run(layoutDir, new File(out, "res"), new File(out, "assets"), new File(out, "layout-manifest.json"), ":app", workers, null)
+        return out
+    }
+
+    private static String output(File out, String layout) {
+        return new File(out, "res/layout/" + layout).getText("UTF-8")
+    }
+
+    private static File table(File out, String module) {
+        return new File(out, "assets/" + StyleTable.assetOf(StyleTable.tableIdOf(module)))
+    }
+
+    private static String styleId(String xml) {
+        return (xml =~ /app:styleId="(\d+)"/).findAll().collect { ((List<String>) it)[1] }.first()
+    }
+
+    private static int styleRows(File table) {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(table.bytes))
+        assertEquals(StyleTable.MAGIC, input.readInt())
+        input.readShort()
+        return input.readInt()
+    }
+
+    private static Map<String, byte[]> contents(File root) {
+        Map<String, byte[]> files = new TreeMap<>()
+        root.eachFileRecurse { File file ->
+            if (file.isFile()) files.put(root.toPath().relativize(file.toPath()).toString(), file.bytes)
+        }
+        return files
+    }
+}
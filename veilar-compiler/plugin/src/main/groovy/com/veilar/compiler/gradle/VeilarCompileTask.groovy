@@ -0,0 +1,85 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler.gradle
+
+import com.veilar.compiler.VeilarEngine
+import groovy.transform.CompileStatic
+import org.gradle.api.DefaultTask
+import org.gradle.api.GradleException
+import org.gradle.api.file.ConfigurableFileCollection
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.services.ServiceReference
+import org.gradle.api.tasks.CacheableTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputDirectory
+import org.gradle.api.tasks.InputFiles
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.Optional
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.PathSensitive
+import org.gradle.api.tasks.PathSensitivity
+import org.gradle.api.tasks.TaskAction
+import org.gradle.work.Incremental
+import org.gradle.work.InputChanges
+
+@CompileStatic
+@CacheableTask
+abstract class VeilarCompileTask extends DefaultTask {
+
+    @Incremental
+    @InputDirectory
+    @PathSensitive(PathSensitivity.RELATIVE)
+    abstract DirectoryProperty getLayoutDir()
+
+    // Files referenced through as9:src live outside the project, so only their names and contents count.
+    @Incremental
+    @InputFiles
+    @PathSensitive(PathSensitivity.NAME_ONLY)
+    abstract ConfigurableFileCollection getSourceAssets()
+
+    // Names this module's style table; see StyleTable.tableIdOf.
+    @Input
+    abstract Property<String> getModule()
+
+    @Internal
+    abstract Property<Integer> getWorkers()
+
+    @ServiceReference(VeilarCompilerService.NAME)
+    abstract Property<VeilarCompilerService> getCompilerService()
+
+    @OutputDirectory
+    abstract DirectoryProperty getResOutputDir()
+
+    @OutputDirectory
+    abstract DirectoryProperty getAssetsOutputDir()
+
+    @OutputFile
+    abstract RegularFileProperty getManifestFile()
+
+    // Timings and cache statistics of the last compile, kept out of the generated sources so they never
+    // change what gets packaged.
+    @OutputFile
+    abstract RegularFileProperty getTelemetryFile()
+
+    // Set by -Pveilar.trace; a Chrome trace-event file (chrome://tracing, Perfetto) of the compile.
+    @Optional
+    @OutputFile
+    abstract RegularFileProperty getTraceFile()
+
+    @TaskAction
+    void compile(InputChanges changes) {
+        // Between incremental runs Gradle keeps the outputs, so the layout manifest can skip unchanged layouts. A
+        // non-incremental run starts from wiped outputs and no manifest, and transpiles every layout.
+        // A failed compile must fail the task, or its half-written outputs would be stored in the build cache.
+        println "Veilar: Starting compilation..."
+        try {
+            VeilarEngine.run(layoutDir.get().asFile, resOutputDir.get().asFile, assetsOutputDir.get().asFile,
+                    manifestFile.get().asFile, module.get(), workers.get(), telemetryFile.get().asFile, traceFile.getOrNull()?.asFile,
+                    compilerService.get().cache)
+        } catch (Exception e) {
+            throw new GradleException(e.message ?: "Veilar: compilation failed", e)
+        }
+    }
+}
@@ -0,0 +1,22 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler.gradle
+
+import com.veilar.compiler.CompilerCache
+import groovy.transform.CompileStatic
+import org.gradle.api.services.BuildService
+import org.gradle.api.services.BuildServiceParameters
+
+// Shared by the runVeilarCompiler and veilarWatch tasks of every module. Gradle recreates services per build, so the
+// warm state itself is static: it lives as long as the daemon keeps this plugin's classes loaded. Its snapshot table
+// and the ColorResolver and GradientResolver memos (static in the engine either way) are concurrent maps, so modules
+// compile in parallel; the cache counters in their telemetry then include each other's lookups.
+@CompileStatic
+abstract class VeilarCompilerService implements BuildService<BuildServiceParameters.None> {
+    static final String NAME = "veilarCompiler"
+
+    private static final CompilerCache CACHE = new CompilerCache()
+
+    CompilerCache getCache() {
+        return CACHE
+    }
+}
@@ -0,0 +1,63 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler.gradle
+
+import groovy.transform.CompileDynamic
+import groovy.transform.CompileStatic
+import org.gradle.api.Plugin
+import org.gradle.api.Project
+import org.gradle.api.file.Directory
+import org.gradle.api.provider.Provider
+import org.gradle.api.tasks.TaskProvider
+
+@CompileStatic
+class VeilarPlugin implements Plugin<Project> {
+
+    @Override
+    void apply(Project project) {
+        Provider<Directory> veilarOutput = project.layout.buildDirectory.dir("generated/veilar")
+        Directory veilarLayouts = project.layout.projectDirectory.dir("src/main/res/layout")
+
+        // No usage limit: the warm tables are concurrent, so the modules of a parallel build compile side by side.
+        project.gradle.sharedServices.registerIfAbsent(VeilarCompilerService.NAME, VeilarCompilerService) {}
+
+        TaskProvider<VeilarCompileTask> runVeilarCompiler = project.tasks.register("runVeilarCompiler", VeilarCompileTask) { VeilarCompileTask task ->
+            task.layoutDir.set(veilarLayouts)
+            task.module.set(project.path)
+            task.sourceAssets.from(project.providers.of(VeilarSourceScan) { spec -> spec.parameters.layoutDir.set(veilarLayouts) })
+            task.workers.set(project.providers.gradleProperty("veilar.workers").map { String value -> value as Integer }
+                    .orElse(Runtime.runtime.availableProcessors()))
+            task.resOutputDir.set(veilarOutput.map { Directory dir -> dir.dir("res") })
+            task.assetsOutputDir.set(veilarOutput.map { Directory dir -> dir.dir("assets") })
+            task.manifestFile.set(veilarOutput.map { Directory dir -> dir.file("intermediates/layout-manifest.json") })
+            task.telemetryFile.set(project.layout.buildDirectory.file("reports/veilar/telemetry.json"))
+            task.traceFile.set(project.providers.gradleProperty("veilar.trace").flatMap { String value ->
+                project.layout.buildDirectory.file("reports/veilar/trace.json")
+            })
+        }
+
+        // ./gradlew :app:veilarWatch re-transpiles each layout as it is saved, without a Gradle build per edit.
+        project.tasks.register("veilarWatch", VeilarWatchTask) { VeilarWatchTask task ->
+            task.description = "Watches the layouts and their as9:src files and re-transpiles them on every save."
+            task.layoutDir.set(runVeilarCompiler.flatMap { it.layoutDir })
+            task.module.set(runVeilarCompiler.flatMap { it.module })
+            task.workers.set(runVeilarCompiler.flatMap { it.workers })
+            task.resOutputDir.set(runVeilarCompiler.flatMap { it.resOutputDir })
+            task.assetsOutputDir.set(runVeilarCompiler.flatMap { it.assetsOutputDir })
+            task.manifestFile.set(runVeilarCompiler.flatMap { it.manifestFile })
+        }
+
+        project.afterEvaluate {
+            addSourceDirs(project, veilarOutput)
+            project.tasks.named("preBuild").configure { it.dependsOn(runVeilarCompiler) }
+        }
+    }
+
+    // The Android Gradle Plugin is not on this plugin's classpath, so its extension is reached dynamically.
+    @CompileDynamic
+    private static void addSourceDirs(Project project, Provider<Directory> veilarOutput) {
+        project.android.sourceSets.matching { it.name == 'debug' || it.name == 'release' }.all { sourceSet ->
+            sourceSet.res.srcDirs += veilarOutput.get().dir("res").asFile
+            sourceSet.assets.srcDirs += veilarOutput.get().dir("assets").asFile
+        }
+    }
+}
@@ -0,0 +1,20 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler.gradle
+
+import com.veilar.compiler.VeilarEngine
+import groovy.transform.CompileStatic
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.provider.ValueSource
+import org.gradle.api.provider.ValueSourceParameters
+
+@CompileStatic
+abstract class VeilarSourceScan implements ValueSource<List<File>, Params> {
+    interface Params extends ValueSourceParameters {
+        DirectoryProperty getLayoutDir()
+    }
+
+    @Override
+    List<File> obtain() {
+        return VeilarEngine.referencedSources(parameters.layoutDir.get().asFile)
+    }
+}
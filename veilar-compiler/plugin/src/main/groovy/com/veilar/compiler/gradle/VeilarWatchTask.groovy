@@ -0,0 +1,47 @@
+// SPDX-License-Identifier: Apache-2.0
+package com.veilar.compiler.gradle
+
+import com.veilar.compiler.VeilarWatcher
+import groovy.transform.CompileStatic
+import org.gradle.api.DefaultTask
+import org.gradle.api.file.DirectoryProperty
+import org.gradle.api.file.RegularFileProperty
+import org.gradle.api.provider.Property
+import org.gradle.api.services.ServiceReference
+import org.gradle.api.tasks.Internal
+import org.gradle.api.tasks.TaskAction
+import org.gradle.api.tasks.UntrackedTask
+
+// Runs until cancelled, rewriting runVeilarCompiler's outputs in place through the same layout manifest, on the
+// same warm state from VeilarCompilerService.
+@CompileStatic
+@UntrackedTask(because = "Runs until cancelled and keeps the generated sources in sync itself")
+abstract class VeilarWatchTask extends DefaultTask {
+
+    @Internal
+    abstract DirectoryProperty getLayoutDir()
+
+    @Internal
+    abstract Property<String> getModule()
+
+    @Internal
+    abstract Property<Integer> getWorkers()
+
+    @Internal
+    abstract DirectoryProperty getResOutputDir()
+
+    @Internal
+    abstract DirectoryProperty getAssetsOutputDir()
+
+    @Internal
+    abstract RegularFileProperty getManifestFile()
+
+    @ServiceReference(VeilarCompilerService.NAME)
+    abstract Property<VeilarCompilerService> getCompilerService()
+
+    @TaskAction
+    void watch() {
+        new VeilarWatcher(layoutDir.get().asFile, resOutputDir.get().asFile, assetsOutputDir.get().asFile,
+                manifestFile.get().asFile, module.get(), workers.get(), compilerService.get().cache).watch()
+    }
+}
@@ -0,0 +1,155 @@
+package com.veilar;
+
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+import android.graphics.SweepGradient;
+import android.util.LruCache;
+import java.util.Arrays;
+
+/**
+ * An immutable gradient (type, angle, tile mode, colors and stops), interned per process in bounded LRUs. A bundle
+ * string in use is parsed once, and equal gradients from bundles, shades and {@link VeilarStyleTable} rows resolve to
+ * one instance shared by every Veilar view. Styles built at runtime through {@link VeilarStyle.Builder} pass through
+ * the same pools, so they are evicted rather than kept for the life of the process. The arrays are never handed out
+ * for writing.
+ */
+final class GradientSpec {
+
+    static final int TYPE_LINEAR = 0;
+    static final int TYPE_RADIAL = 1;
+    static final int TYPE_SWEEP = 2;
+
+    static final int TILE_CLAMP = 0;
+    static final int TILE_REPEAT = 1;
+    static final int TILE_MIRROR = 2;
+
+    // Entries per pool: far more than the distinct values of any set of layouts, while runtime styles can't grow them.
+    private static final int MAX_INTERNED = 512;
+    private static final LruCache<GradientSpec, GradientSpec> specs = new LruCache<>(MAX_INTERNED);
+    private static final LruCache<String, GradientSpec> bundles = new LruCache<>(MAX_INTERNED);
+    private static final LruCache<String, GradientSpec> shades = new LruCache<>(MAX_INTERNED);
+    private static final GradientSpec INVALID = new GradientSpec(TYPE_LINEAR, 0, TILE_CLAMP, new int[0], new float[0]);
+
+    final int type;
+    final int angle;
+    final int tile;
+    final int[] colors;
+    final float[] stops;
+    private final int hash;
+
+    private GradientSpec(int type, int angle, int tile, int[] colors, float[] stops) {
+        this.type = type;
+        this.angle = angle;
+        this.tile = tile;
+        this.colors = colors;
+        this.stops = stops;
+        int result = 31 * type + angle;
+        result = 31 * result + tile;
+        result = 31 * result + Arrays.hashCode(colors);
+        this.hash = 31 * result + Arrays.hashCode(stops);
+    }
+
+    static GradientSpec of(int type, int angle, int tile, int[] colors, float[] stops) {
+        GradientSpec known = specs.get(new GradientSpec(type, angle, tile, colors, stops));
+        if (known != null) return known;
+        GradientSpec spec = new GradientSpec(type, angle, tile, colors.clone(), stops.clone());
+        // Two threads may both miss; the later put wins and both instances stay valid, merely unshared.
+        specs.put(spec, spec);
+        return spec;
+    }
+
+    static GradientSpec solid(int color) {
+        return of(TYPE_LINEAR, 0, TILE_CLAMP, new int[]{color, color}, new float[]{0f, 1f});
+    }
+
+    static GradientSpec solid(String hex) {
+        if (hex == null || hex.isEmpty()) return null;
+        GradientSpec spec = shades.get(hex);
+        if (spec == null) {
+            try {
+                spec = solid(Color.parseColor(hex));
+            } catch (Exception e) { spec = INVALID; }
+            shades.put(hex, spec);
+        }
+        return spec == INVALID ? null : spec;
+    }
+
+    // String bundles ("type[:params]|#hex:stop;...|angle|tile") are still accepted for hand-written layouts.
+    static GradientSpec parse(String bundle) {
+        if (bundle == null || bundle.isEmpty()) return null;
+        GradientSpec spec = bundles.get(bundle);
+        if (spec == null) {
+            spec = parseBundle(bundle);
+            bundles.put(bundle, spec);
+        }
+        return spec == INVALID ? null : spec;
+    }
+
+    private static GradientSpec parseBundle(String bundle) {
+        try {
+            String[] segments = bundle.split("\\|");
+            if (segments.length < 2) return INVALID;
+            String type = segments[0].split(":")[0];
+            String[] colorEntries = segments[1].split(";");
+            int[] colors = new int[colorEntries.length];
+            float[] stops = new float[colorEntries.length];
+            for (int i = 0; i < colorEntries.length; i++) {
+                String[] pair = colorEntries[i].split(":");
+                colors[i] = Color.parseColor(pair[0]);
+                stops[i] = Float.parseFloat(pair[1]);
+            }
+            int angle = (segments.length > 2) ? Integer.parseInt(segments[2]) : 0;
+            int tile = (segments.length > 3) ? tileOf(segments[3]) : TILE_CLAMP;
+            int typeId = type.equals("radial") ? TYPE_RADIAL : type.equals("sweep") ? TYPE_SWEEP : TYPE_LINEAR;
+            return of(typeId, angle, tile, colors, stops);
+        } catch (Exception e) { return INVALID; }
+    }
+
+    private static int tileOf(String name) {
+        if (name.equals("repeat")) return TILE_REPEAT;
+        if (name.equals("mirror")) return TILE_MIRROR;
+        return TILE_CLAMP;
+    }
+
+    Shader shader(float w, float h, float brightnessFactor) {
+        int[] shifted = colors;
+        if (brightnessFactor != 1.0f) {
+            shifted = new int[colors.length];
+            float[] hsv = new float[3];
+            for (int i = 0; i < colors.length; i++) shifted[i] = shiftBrightness(colors[i], brightnessFactor, hsv);
+        }
+        // Always clamped, as ShapeVectorizer writes baked shapes, so a bundle renders the same baked or at runtime.
+        // tile is still carried so bundles and style table rows keep their format.
+        Shader.TileMode mode = Shader.TileMode.CLAMP;
+        if (type == TYPE_RADIAL) {
+            return new RadialGradient(w / 2, h / 2, Math.max(w, h) / 2, shifted, stops, mode);
+        } else if (type == TYPE_SWEEP) {
+            return new SweepGradient(w / 2, h / 2, shifted, stops);
+        }
+        double rad = Math.toRadians(angle);
+        return new LinearGradient(0, 0, (float) (Math.cos(rad) * w), (float) (Math.sin(rad) * h), shifted, stops, mode);
+    }
+
+    private static int shiftBrightness(int color, float factor, float[] hsv) {
+        Color.colorToHSV(color, hsv);
+        hsv[2] *= factor;
+        hsv[2] = Math.max(0f, Math.min(1f, hsv[2]));
+        return Color.HSVToColor(Color.alpha(color), hsv);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GradientSpec)) return false;
+        GradientSpec g = (GradientSpec) o;
+        return hash == g.hash && type == g.type && angle == g.angle && tile == g.tile
+                && Arrays.equals(colors, g.colors) && Arrays.equals(stops, g.stops);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -5,43 +5,58 @@ import android.content.res.ColorStateList;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.LinearGradient; 
+import android.graphics.ColorFilter;
 import android.graphics.Outline;
-import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.PorterDuff;
-import android.graphics.RadialGradient;
+import android.graphics.PorterDuffColorFilter;
 import android.graphics.Shader;
-import android.graphics.SweepGradient;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.RippleDrawable;
 import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.RoundRectShape;
 import android.graphics.drawable.shapes.Shape;
 import android.os.Build;
 import android.util.AttributeSet;
+import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewOutlineProvider;
 import androidx.appcompat.widget.AppCompatButton;
-import java.util.Arrays;
 
 public class VeilarButton extends AppCompatButton {
 
+    private static final ColorFilter PRESSED_DIM = new PorterDuffColorFilter(Color.argb(60, 0, 0, 0), PorterDuff.Mode.SRC_ATOP);
+    private static final ColorFilter PRESSED_GLOW = new PorterDuffColorFilter(Color.argb(60, 255, 255, 255), PorterDuff.Mode.SRC_ATOP);
+
     private float manualRadius = 0f;
     private int shapeId = 0;
     private int shapeParam = 0;
-    private String interactionBundle = "";
-    private String cachedBgGradient = null;
-    private String cachedBgShade = null;
+    private int interactions = 0;
+    private GradientSpec textGradient = null;
+    private GradientSpec bgGradient = null;
+
+    // Press state, resolved once: the touch path only swaps these references.
+    private boolean shrinkOnPress = false;
+    private float pressedFactor = 1.0f;
+    private Shader normalBgShader = null;
+    private Shader pressedBgShader = null;
+    private Drawable pressBackground = null;
+    private ShapeDrawable pressContent = null;
+    // Set for app:renderMode="lean": the background is drawn in onDraw instead of through a drawable.
+    private VeilarLeanRenderer lean = null;
+    // Size the current backgrounds and shaders were built for; see materialize().
+    private int builtWidth = 0;
+    private int builtHeight = 0;
+    private VeilarStyle boundStyle = null;
 
     public VeilarButton(Context androidContext, AttributeSet attrs) {
         super(androidContext, attrs); 
         init(androidContext, attrs);
     }
 
+    // May run off the main thread (AsyncLayoutInflater, pre-inflation pools). init only reads attributes and
+    // interned specs; everything that depends on the size waits for materialize() on the first layout.
     private void init(Context context, AttributeSet attrs) {
-        
         setBackground(null);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             setElevation(0);
@@ -50,58 +65,54 @@ public class VeilarButton extends AppCompatButton {
         setPadding(0, 0, 0, 0);
 
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.VeilarAttributes);
-        String textGradient = a.getString(R.styleable.VeilarAttributes_gradient);
-        cachedBgGradient = a.getString(R.styleable.VeilarAttributes_bggradient);
-        cachedBgShade = a.getString(R.styleable.VeilarAttributes_bgshade);
+        VeilarStyleTable.Style style = VeilarStyleTable.get(context, a.getInt(R.styleable.VeilarAttributes_styleTable, 0),
+                a.getInt(R.styleable.VeilarAttributes_styleId, 0));
+        String textBundle = a.getString(R.styleable.VeilarAttributes_gradient);
+        String bgBundle = a.getString(R.styleable.VeilarAttributes_bggradient);
+        String bgShade = a.getString(R.styleable.VeilarAttributes_bgshade);
         String radiusStr = a.getString(R.styleable.VeilarAttributes_radius);
         String shapeBundle = a.getString(R.styleable.VeilarAttributes_shapeBundle);
-        interactionBundle = a.getString(R.styleable.VeilarAttributes_interactionBundle);
-        if (interactionBundle == null) interactionBundle = "";
+        int interactions = a.getInt(R.styleable.VeilarAttributes_interactions, 0);
+        // Hand-written layouts may still use the string form.
+        if (interactions == 0) interactions = VeilarStyle.parseInteractions(a.getString(R.styleable.VeilarAttributes_interactionBundle));
+        int renderMode = a.getInt(R.styleable.VeilarAttributes_renderMode, VeilarLeanRenderer.MODE_DRAWABLE);
         a.recycle();
 
-        setClickable(true);
-        setLongClickable(true);
+        if (renderMode == VeilarLeanRenderer.MODE_LEAN) lean = new VeilarLeanRenderer();
 
-        float density = getResources().getDisplayMetrics().density;
-
-        if (shapeBundle != null) {
-            String[] parts = shapeBundle.split(":");
-            shapeId = Integer.parseInt(parts[0]);
-            shapeParam = Integer.parseInt(parts[1]);
-        }
+        setInteractions(interactions);
 
-        if (radiusStr != null) {
-            manualRadius = Float.parseFloat(radiusStr.replaceAll("[^\\d.]", "")) * density;
-        }
+        float density = getResources().getDisplayMetrics().density;
 
-        post(() -> {
-            if (textGradient != null && !textGradient.isEmpty()) applyGradient(textGradient, true, 1.0f);
+        if (style != null) {
+            textGradient = style.text;
+            bgGradient = style.background;
+            shapeId = style.shapeId;
+            shapeParam = style.shapeParam;
+            if (style.hasRadius) manualRadius = style.radiusDp * density;
+        } else {
+            textGradient = GradientSpec.parse(textBundle);
+            bgGradient = GradientSpec.parse(bgBundle);
+            if (bgGradient == null) bgGradient = GradientSpec.solid(bgShade);
 
-            if (cachedBgGradient != null && !cachedBgGradient.isEmpty()) {
-                applyGradient(cachedBgGradient, false, 1.0f);
-            } else if (cachedBgShade != null && !cachedBgShade.isEmpty()) {
-                String dummyGradient = "linear|" + cachedBgShade + ":0;" + cachedBgShade + ":1|0|clamp";
-                applyGradient(dummyGradient, false, 1.0f);
+            if (shapeBundle != null) {
+                String[] parts = shapeBundle.split(":");
+                shapeId = Integer.parseInt(parts[0]);
+                shapeParam = Integer.parseInt(parts[1]);
             }
-        });
-    }
 
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
-        if (w > 0 && h > 0) {
-            if (cachedBgGradient != null) applyGradient(cachedBgGradient, false, 1.0f);
-            else if (cachedBgShade != null) {
-                String dummyGradient = "linear|" + cachedBgShade + ":0;" + cachedBgShade + ":1|0|clamp";
-                applyGradient(dummyGradient, false, 1.0f);
+            if (radiusStr != null) {
+                manualRadius = Float.parseFloat(radiusStr.replaceAll("[^\\d.]", "")) * density;
             }
         }
+        reserveBackground();
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (interactions == 0) return super.onTouchEvent(event);
         int action = event.getAction();
-        if (interactionBundle.contains("shrink")) {
+        if (shrinkOnPress) {
             if (action == MotionEvent.ACTION_DOWN) {
                 this.animate().scaleX(0.95f).scaleY(0.95f).setDuration(100).start();
                 handleInteractionShift(true);
@@ -116,188 +127,179 @@ public class VeilarButton extends AppCompatButton {
         return super.onTouchEvent(event);
     }
 
-    private void handleInteractionShift(boolean isPressed) {
-        float factor = 1.0f;
-        if (isPressed) {
-            if (interactionBundle.contains("dim")) factor = 0.8f;
-            else if (interactionBundle.contains("glow")) factor = 1.2f;
-        }
+    /**
+     * Restyles this view from code, e.g. when a recycled view holder is bound. Binding the style that is already bound
+     * is a no-op; otherwise only the state it changes is dropped and rebuilt once the size is known.
+     */
+    public void bind(VeilarStyle style) {
+        if (style == null || style == boundStyle) return;
+        boundStyle = style;
+        resetPress();
+        float oldFactor = pressedFactor;
+        if (style.interactions != interactions) setInteractions(style.interactions);
+        float radius = style.radiusDp * getResources().getDisplayMetrics().density;
+        if (style.text == textGradient && style.background == bgGradient && style.shapeId == shapeId && style.shapeParam == shapeParam
+                && radius == manualRadius && pressedFactor == oldFactor) return;
 
-        Drawable bg = getBackground();
-        if (bg instanceof RippleDrawable) {
-            Drawable content = ((RippleDrawable) bg).getDrawable(0);
-            if (content instanceof ShapeDrawable) {
-                if (cachedBgGradient != null) updateShaderOnly((ShapeDrawable) content, cachedBgGradient, factor);
-                else if (cachedBgShade != null) {
-                    String dummyGradient = "linear|" + cachedBgShade + ":0;" + cachedBgShade + ":1|0|clamp";
-                    updateShaderOnly((ShapeDrawable) content, dummyGradient, factor);
-                }
-            } else if (isPressed && factor != 1.0f) {
-                int tint = (factor < 1.0f) ? Color.argb(60, 0, 0, 0) : Color.argb(60, 255, 255, 255);
-                bg.setColorFilter(tint, PorterDuff.Mode.SRC_ATOP);
-            } else {
-                bg.clearColorFilter();
-            }
+        if (style.text == null && textGradient != null) {
+            getPaint().setShader(null);
         }
+        if (style.background == null && bgGradient != null) {
+            normalBgShader = null;
+            pressedBgShader = null;
+            if (lean != null) lean.setShaders(0, 0, null, null);
+            else setBackground(null);
+            setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+            setClipToOutline(false);
+        }
+        textGradient = style.text;
+        bgGradient = style.background;
+        shapeId = style.shapeId;
+        shapeParam = style.shapeParam;
+        manualRadius = radius;
+        reserveBackground();
+        // Rebuilt now if the size is known, otherwise by onSizeChanged() on the first layout.
+        builtWidth = 0;
+        builtHeight = 0;
+        materialize();
+        invalidate();
     }
 
-    private void updateShaderOnly(ShapeDrawable drawable, String bundle, float factor) {
-        try {
-            String[] segments = bundle.split("\\|");
-            String[] shaderParams = segments[0].split(":");
-            String type = shaderParams[0];
-            String[] colorEntries = segments[1].split(";");
-            int[] colors = new int[colorEntries.length];
-            float[] stops = new float[colorEntries.length];
-            for (int i = 0; i < colorEntries.length; i++) {
-                String[] pair = colorEntries[i].split(":");
-                int baseColor = Color.parseColor(pair[0]);
-                colors[i] = factor == 1.0f ? baseColor : shiftBrightness(baseColor, factor);
-                stops[i] = Float.parseFloat(pair[1]);
-            }
-            float w = getWidth(), h = getHeight();
-            Shader shader;
-            if (type.equals("radial")) {
-                shader = new RadialGradient(w / 2, h / 2, Math.max(w, h) / 2, colors, stops, Shader.TileMode.CLAMP);
-            } else if (type.equals("sweep")) {
-                shader = new SweepGradient(w / 2, h / 2, colors, stops);
-            } else {
-                int angle = (segments.length > 2) ? Integer.parseInt(segments[2]) : 0;
-                double rad = Math.toRadians(angle);
-                shader = new LinearGradient(0, 0, (float) (Math.cos(rad) * w), (float) (Math.sin(rad) * h), colors, stops, Shader.TileMode.CLAMP);
-            }
-            drawable.getPaint().setShader(shader);
-            invalidate();
-        } catch (Exception e) {}
+    private void setInteractions(int flags) {
+        interactions = flags;
+        shrinkOnPress = (flags & VeilarStyle.INTERACTION_SHRINK) != 0;
+        if ((flags & VeilarStyle.INTERACTION_DIM) != 0) pressedFactor = 0.8f;
+        else if ((flags & VeilarStyle.INTERACTION_GLOW) != 0) pressedFactor = 1.2f;
+        else pressedFactor = 1.0f;
+        // Only ever turned on: the app may own these flags (a click listener, or just being a button).
+        if (flags != 0) setClickable(true);
+        if ((flags & VeilarStyle.INTERACTION_VIBE) != 0) setLongClickable(true);
     }
 
-    private void applyGradient(String bundle, boolean isText, float brightnessFactor) {
-        try {
-            String[] segments = bundle.split("\\|");
-            if (segments.length < 2) return;
-            String[] colorEntries = segments[1].split(";");
-            int[] colors = new int[colorEntries.length];
-            float[] stops = new float[colorEntries.length];
-            for (int i = 0; i < colorEntries.length; i++) {
-                String[] pair = colorEntries[i].split(":");
-                int baseColor = Color.parseColor(pair[0]);
-                colors[i] = brightnessFactor == 1.0f ? baseColor : shiftBrightness(baseColor, brightnessFactor);
-                stops[i] = Float.parseFloat(pair[1]);
-            }
-            float w = getWidth(), h = getHeight();
-            if (w <= 0 || h <= 0) return;
-            Shader shader;
-            String type = segments[0].split(":")[0];
-            if (type.equals("radial")) {
-                shader = new RadialGradient(w / 2, h / 2, Math.max(w, h) / 2, colors, stops, Shader.TileMode.CLAMP);
-            } else if (type.equals("sweep")) {
-                shader = new SweepGradient(w / 2, h / 2, colors, stops);
-            } else {
-                int angle = (segments.length > 2) ? Integer.parseInt(segments[2]) : 0;
-                double rad = Math.toRadians(angle);
-                shader = new LinearGradient(0, 0, (float) (Math.cos(rad) * w), (float) (Math.sin(rad) * h), colors, stops, Shader.TileMode.CLAMP);
-            }
-            if (isText) {
-                getPaint().setShader(shader);
-                invalidate();
-            } else {
-                Shape vShape = getExactShape(w, h);
-                ShapeDrawable content = new ShapeDrawable(vShape);
-                content.getPaint().setShader(shader);
-                content.setBounds(0, 0, (int)w, (int)h);
-
-                ShapeDrawable mask = new ShapeDrawable(vShape);
-                mask.setBounds(0, 0, (int)w, (int)h);
+    // A recycled view can be bound mid-press or mid-animation; the new style starts from rest.
+    private void resetPress() {
+        animate().cancel();
+        setScaleX(1.0f);
+        setScaleY(1.0f);
+        setPressed(false);
+        if (lean != null) {
+            if (lean.setPressed(false)) invalidate();
+        } else if (pressBackground != null) {
+            pressBackground.clearColorFilter();
+            if (pressContent != null && normalBgShader != null) pressContent.getPaint().setShader(normalBgShader);
+            pressBackground = null;
+            pressContent = null;
+        }
+    }
 
-                RippleDrawable ripple = new RippleDrawable(ColorStateList.valueOf(Color.parseColor("#40FFFFFF")), content, mask);
-                this.setBackground(ripple);
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        materialize();
+    }
 
-                boolean isSimple = (shapeId == 1 || shapeId == 3 || shapeId == 0);
-                if (isSimple) {
-                    setClipToOutline(true);
-                    setOutlineProvider(new ViewOutlineProvider() {
-                        @Override
-                        public void getOutline(View view, Outline outline) {
-                            if (shapeId == 1) outline.setOval(0, 0, (int)w, (int)h);
-                            else outline.setRoundRect(0, 0, (int)w, (int)h, manualRadius);
-                        }
-                    });
-                } else {
-                    setClipToOutline(false);
-                    setOutlineProvider(null);
-                }
-            }
-        } catch (Exception e) {}
+    // Builds the backgrounds and shaders once per size, during layout, so draw() never changes view state and the
+    // first frame already has them. A layout at the same size is a no-op.
+    private void materialize() {
+        int w = getWidth(), h = getHeight();
+        if (w <= 0 || h <= 0 || (w == builtWidth && h == builtHeight)) return;
+        builtWidth = w;
+        builtHeight = h;
+        if (textGradient != null) applyGradient(textGradient, true, 1.0f);
+        if (bgGradient != null) applyGradient(bgGradient, false, 1.0f);
     }
 
-    private int shiftBrightness(int color, float factor) {
-        float[] hsv = new float[3];
-        Color.colorToHSV(color, hsv);
-        hsv[2] *= factor;
-        hsv[2] = Math.max(0f, Math.min(1f, hsv[2]));
-        return Color.HSVToColor(Color.alpha(color), hsv);
+    // materialize() swaps the real background in during layout. View.setBackground() only requests a layout when the
+    // padding or minimum size changes, or when there was no background before; the built drawables have neither
+    // padding nor a minimum size, so holding a blank one until then keeps that swap from requesting a layout.
+    private void reserveBackground() {
+        if (lean == null && bgGradient != null && getBackground() == null) setBackground(new ColorDrawable(Color.TRANSPARENT));
     }
 
-    private Shape getExactShape(float w, float h) {
-        if (shapeId == 1) return new android.graphics.drawable.shapes.OvalShape();
-        if (shapeId == 3) {
-            float pr = Math.min(w, h) / 2f;
-            float[] r = new float[]{pr, pr, pr, pr, pr, pr, pr, pr};
-            return new RoundRectShape(r, null, null);
-        }
-        if (shapeId == 0) {
-            float[] r = new float[]{manualRadius, manualRadius, manualRadius, manualRadius, manualRadius, manualRadius, manualRadius, manualRadius};
-            return new RoundRectShape(r, null, null);
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (lean != null) {
+            int scrollX = getScrollX(), scrollY = getScrollY();
+            canvas.translate(scrollX, scrollY);
+            lean.draw(canvas);
+            canvas.translate(-scrollX, -scrollY);
         }
-
-        final Path path;
-        if (shapeId == 2) path = getCutPath(w, h, manualRadius);
-        else if (shapeId == 4) path = getSquirclePath(w, h, manualRadius);
-        else if (shapeId == 5) path = getPolyPath(w, h, shapeParam);
-        else path = new Path();
-
-        return new Shape() {
-            @Override
-            public void draw(Canvas canvas, Paint paint) {
-                canvas.drawPath(path, paint);
-            }
-        };
+        super.onDraw(canvas);
     }
 
-    private Path getCutPath(float w, float h, float r) {
-        Path path = new Path();
-        path.moveTo(r, 0); path.lineTo(w - r, 0); path.lineTo(w, r);
-        path.lineTo(w, h - r); path.lineTo(w - r, h); path.lineTo(r, h);
-        path.lineTo(0, h - r); path.lineTo(0, r); path.close();
-        return path;
+    private void handleInteractionShift(boolean isPressed) {
+        if (pressedFactor == 1.0f) return;
+        if (lean != null) {
+            if (lean.setPressed(isPressed)) invalidate();
+            return;
+        }
+        Drawable bg = getBackground();
+        if (bg == null) return;
+        if (bg != pressBackground) {
+            // The background may come from VeilarDrawableCache; give this view its own paint before changing it.
+            bg = bg.mutate();
+            pressBackground = bg;
+            pressContent = null;
+            if (bg instanceof RippleDrawable) {
+                Drawable content = ((RippleDrawable) bg).getDrawable(0);
+                if (content instanceof ShapeDrawable) pressContent = (ShapeDrawable) content;
+            }
+        }
+        if (pressContent != null) {
+            if (pressedBgShader == null) return;
+            pressContent.getPaint().setShader(isPressed ? pressedBgShader : normalBgShader);
+            invalidate();
+        } else if (bg instanceof RippleDrawable) {
+            if (isPressed) bg.setColorFilter(pressedFactor < 1.0f ? PRESSED_DIM : PRESSED_GLOW);
+            else bg.clearColorFilter();
+        }
     }
 
-    private Path getPolyPath(float w, float h, int sides) {
-        Path path = new Path();
-        float cx = w / 2f, cy = h / 2f, rx = w / 2f, ry = h / 2f;
-        for (int i = 0; i < sides; i++) {
-            double angle = 2.0 * Math.PI * i / sides - Math.PI / 2.0;
-            float x = (float) (cx + rx * Math.cos(angle));
-            float y = (float) (cy + ry * Math.sin(angle));
-            if (i == 0) path.moveTo(x, y); else path.lineTo(x, y);
+    @Override
+    public boolean performLongClick() {
+        if ((interactions & VeilarStyle.INTERACTION_VIBE) != 0) {
+            this.performHapticFeedback(HapticFeedbackConstants.KEYBOARD_TAP);
         }
-        path.close();
-        return path;
+        return super.performLongClick();
     }
 
-    private Path getSquirclePath(float w, float h, float r) {
-        Path path = new Path();
-        float ratio = 0.5522847498f, c = r * ratio;
-        path.moveTo(r, 0);
-        path.lineTo(w - r, 0);
-        path.cubicTo(w - c, 0, w, c, w, r);
-        path.lineTo(w, h - r);
-        path.cubicTo(w, h - c, w - c, h, w - r, h);
-        path.lineTo(r, h);
-        path.cubicTo(c, h, 0, h - c, 0, h - r);
-        path.lineTo(0, r);
-        path.cubicTo(0, c, c, 0, r, 0);
-        path.close();
-        return path;
+    private void applyGradient(GradientSpec gradient, boolean isText, float brightnessFactor) {
+        try {
+            float w = getWidth(), h = getHeight();
+            if (w <= 0 || h <= 0) return;
+            Shader shader = VeilarDrawableCache.shader(gradient, (int) w, (int) h, brightnessFactor);
+            if (isText) {
+                getPaint().setShader(shader);
+            } else {
+                normalBgShader = shader;
+                pressedBgShader = pressedFactor == 1.0f ? shader
+                        : VeilarDrawableCache.shader(gradient, (int) w, (int) h, brightnessFactor * pressedFactor);
+                if (lean != null) {
+                    lean.setShape(shapeId, shapeParam, manualRadius);
+                    lean.setShaders((int) w, (int) h, shader, pressedBgShader);
+                } else {
+                    this.setBackground(VeilarDrawableCache.background(getResources(), VeilarDrawableCache.KIND_RIPPLE, gradient,
+                            (int) w, (int) h, shapeId, shapeParam, manualRadius, brightnessFactor, () -> {
+                        Shape vShape = VeilarGeometry.shape(shapeId, shapeParam, w, h, manualRadius);
+                        ShapeDrawable content = new ShapeDrawable(vShape);
+                        content.getPaint().setShader(shader);
+                        content.setBounds(0, 0, (int)w, (int)h);
+
+                        ShapeDrawable mask = new ShapeDrawable(vShape);
+                        mask.setBounds(0, 0, (int)w, (int)h);
+
+                        return new RippleDrawable(ColorStateList.valueOf(Color.parseColor("#40FFFFFF")), content, mask);
+                    }));
+                }
+
+                setOutlineProvider(new ViewOutlineProvider() {
+                    @Override
+                    public void getOutline(View view, Outline outline) {
+                        VeilarGeometry.outline(outline, shapeId, shapeParam, (int) w, (int) h, manualRadius);
+                    }
+                });
+                setClipToOutline(true);
+            }
+        } catch (Exception e) {}
     }
 }
@@ -0,0 +1,102 @@
+package com.veilar;
+
+import android.content.res.Resources;
+import android.graphics.Shader;
+import android.graphics.drawable.Drawable;
+import android.util.LruCache;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide LRU of the shaders and backgrounds the Veilar views build for a gradient, shape and size, so the
+ * identical chips of a feed share one shader graph instead of allocating their own. Shaders are immutable once built
+ * and are handed out as is. Backgrounds are kept as {@link Drawable.ConstantState}s: every view gets its own
+ * {@code newDrawable()}, and must {@code mutate()} it before touching its paint or color filter.
+ */
+final class VeilarDrawableCache {
+
+    static final int KIND_SHADER = 0;
+    static final int KIND_BACKGROUND = 1;
+    static final int KIND_RIPPLE = 2;
+
+    // Budget in estimated bytes: a fixed cost per object plus its colors and stops.
+    private static final int MAX_BYTES = 256 * 1024;
+    private static final int SHADER_BYTES = 96;
+    private static final int DRAWABLE_BYTES = 512;
+
+    private static final LruCache<Key, Object> cache = new LruCache<Key, Object>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Object value) {
+            int objects = key.kind == KIND_RIPPLE ? 3 : 1;
+            int base = key.kind == KIND_SHADER ? SHADER_BYTES : DRAWABLE_BYTES * objects;
+            return base + key.gradient.colors.length * 8;
+        }
+    };
+
+    private VeilarDrawableCache() {}
+
+    static Shader shader(GradientSpec gradient, int w, int h, float factor) {
+        Key key = new Key(KIND_SHADER, gradient, w, h, 0, 0, 0f, factor);
+        Shader shader = (Shader) cache.get(key);
+        if (shader == null) {
+            shader = gradient.shader(w, h, factor);
+            cache.put(key, shader);
+        }
+        return shader;
+    }
+
+    static Drawable background(Resources res, int kind, GradientSpec gradient, int w, int h,
+                               int shapeId, int shapeParam, float radius, float factor, Supplier<Drawable> build) {
+        Key key = new Key(kind, gradient, w, h, shapeId, shapeParam, radius, factor);
+        Drawable.ConstantState state = (Drawable.ConstantState) cache.get(key);
+        if (state == null) {
+            Drawable built = build.get();
+            state = built.getConstantState();
+            if (state == null) return built;
+            cache.put(key, state);
+        }
+        return state.newDrawable(res);
+    }
+
+    private static final class Key {
+        final int kind;
+        final GradientSpec gradient;
+        final int w, h, shapeId, shapeParam;
+        final float radius, factor;
+        final int hash;
+
+        Key(int kind, GradientSpec gradient, int w, int h, int shapeId, int shapeParam, float radius, float factor) {
+            this.kind = kind;
+            this.gradient = gradient;
+            this.w = w;
+            this.h = h;
+            this.shapeId = shapeId;
+            this.shapeParam = shapeParam;
+            this.radius = radius;
+            this.factor = factor;
+            int result = kind;
+            result = 31 * result + gradient.hashCode();
+            result = 31 * result + w;
+            result = 31 * result + h;
+            result = 31 * result + shapeId;
+            result = 31 * result + shapeParam;
+            result = 31 * result + Float.floatToIntBits(radius);
+            result = 31 * result + Float.floatToIntBits(factor);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return kind == k.kind && w == k.w && h == k.h && shapeId == k.shapeId && shapeParam == k.shapeParam
+                    && Float.compare(radius, k.radius) == 0 && Float.compare(factor, k.factor) == 0
+                    && gradient.equals(k.gradient);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.veilar;
+
+import android.graphics.Outline;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.graphics.drawable.shapes.OvalShape;
+import android.graphics.drawable.shapes.PathShape;
+import android.graphics.drawable.shapes.RoundRectShape;
+import android.graphics.drawable.shapes.Shape;
+import android.os.Build;
+import android.util.LruCache;
+import java.util.Arrays;
+
+/**
+ * Shape geometry shared by the Veilar views. Cut, squircle and polygon paths are built once per
+ * (shape, param, size, radius) and shared by every view of that size; they are never modified after they are cached.
+ * Outlines follow the drawn shape where the platform can clip to it: complex shapes use {@link Outline#setPath} on
+ * API 33+ and keep the round-rect outline before that, so children are still clipped to its rounded corners.
+ */
+final class VeilarGeometry {
+
+    static final int SHAPE_ROUND = 0;
+    static final int SHAPE_OVAL = 1;
+    static final int SHAPE_CUT = 2;
+    static final int SHAPE_PILL = 3;
+    static final int SHAPE_SQUIRCLE = 4;
+    static final int SHAPE_POLYGON = 5;
+
+    private static final int MAX_PATHS = 128;
+
+    private static final LruCache<Key, Path> paths = new LruCache<>(MAX_PATHS);
+
+    private VeilarGeometry() {}
+
+    static boolean isComplex(int shapeId) {
+        return shapeId == SHAPE_CUT || shapeId == SHAPE_SQUIRCLE || shapeId == SHAPE_POLYGON;
+    }
+
+    /** A new {@link Shape} for one drawable; complex shapes wrap the shared path. */
+    static Shape shape(int shapeId, int shapeParam, float w, float h, float radius) {
+        if (shapeId == SHAPE_OVAL) return new OvalShape();
+        if (isComplex(shapeId)) return new PathShape(path(shapeId, shapeParam, w, h, radius), w, h);
+        float[] radii = new float[8];
+        Arrays.fill(radii, shapeId == SHAPE_PILL ? Math.min(w, h) / 2f : radius);
+        return new RoundRectShape(radii, null, null);
+    }
+
+    /** The shared, read-only path of a shape at a size. Callers must not modify it. */
+    static Path path(int shapeId, int shapeParam, float w, float h, float radius) {
+        Key key = new Key(shapeId, shapeParam, w, h, radius);
+        Path path = paths.get(key);
+        if (path == null) {
+            path = buildPath(shapeId, shapeParam, w, h, radius);
+            paths.put(key, path);
+        }
+        return path;
+    }
+
+    static void outline(Outline outline, int shapeId, int shapeParam, int w, int h, float radius) {
+        if (shapeId == SHAPE_OVAL) {
+            outline.setOval(0, 0, w, h);
+        } else if (shapeId == SHAPE_PILL) {
+            outline.setRoundRect(0, 0, w, h, Math.min(w, h) / 2f);
+        } else if (isComplex(shapeId) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            outline.setPath(path(shapeId, shapeParam, w, h, radius));
+        } else {
+            // Path outlines can't clip before API 33; the rounded rect still clips children to the corner radius.
+            outline.setRoundRect(0, 0, w, h, radius);
+        }
+    }
+
+    private static Path buildPath(int shapeId, int shapeParam, float w, float h, float radius) {
+        Path path = new Path();
+        switch (shapeId) {
+            case SHAPE_CUT:
+                path.moveTo(radius, 0); path.lineTo(w - radius, 0); path.lineTo(w, radius);
+                path.lineTo(w, h - radius); path.lineTo(w - radius, h); path.lineTo(radius, h);
+                path.lineTo(0, h - radius); path.lineTo(0, radius); path.close();
+                break;
+            case SHAPE_SQUIRCLE:
+                float r = Math.min(radius, Math.min(w, h) / 2f);
+                float c = r * 0.5522847498f;
+                path.moveTo(r, 0); path.lineTo(w - r, 0);
+                path.cubicTo(w - c, 0, w, c, w, r); path.lineTo(w, h - r);
+                path.cubicTo(w, h - c, w - c, h, w - r, h); path.lineTo(r, h);
+                path.cubicTo(c, h, 0, h - c, 0, h - r); path.lineTo(0, r);
+                path.cubicTo(0, c, c, 0, r, 0); path.close();
+                break;
+            case SHAPE_POLYGON:
+                float cx = w / 2f, cy = h / 2f;
+                for (int i = 0; i < shapeParam; i++) {
+                    double angle = 2.0 * Math.PI * i / shapeParam - Math.PI / 2.0;
+                    float x = (float) (cx + cx * Math.cos(angle)), y = (float) (cy + cy * Math.sin(angle));
+                    if (i == 0) path.moveTo(x, y); else path.lineTo(x, y);
+                }
+                path.close();
+                break;
+            case SHAPE_OVAL:
+                path.addOval(new RectF(0, 0, w, h), Path.Direction.CW);
+                break;
+            default:
+                float rr = shapeId == SHAPE_PILL ? Math.min(w, h) / 2f : radius;
+                path.addRoundRect(new RectF(0, 0, w, h), rr, rr, Path.Direction.CW);
+        }
+        return path;
+    }
+
+    private static final class Key {
+        final int shapeId, shapeParam;
+        final float w, h, radius;
+        final int hash;
+
+        Key(int shapeId, int shapeParam, float w, float h, float radius) {
+            this.shapeId = shapeId;
+            this.shapeParam = shapeParam;
+            this.w = w;
+            this.h = h;
+            this.radius = radius;
+            int result = shapeId;
+            result = 31 * result + shapeParam;
+            result = 31 * result + Float.floatToIntBits(w);
+            result = 31 * result + Float.floatToIntBits(h);
+            result = 31 * result + Float.floatToIntBits(radius);
+            this.hash = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return shapeId == k.shapeId && shapeParam == k.shapeParam && Float.compare(w, k.w) == 0
+                    && Float.compare(h, k.h) == 0 && Float.compare(radius, k.radius) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.veilar;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.view.LayoutInflater;
+import android.view.View;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.app.AppCompatDelegate;
+import androidx.core.view.LayoutInflaterCompat;
+
+/**
+ * Creates the tags the Veilar compiler swaps in ({@code com.veilar.VeilarButton}, {@code VeilarLayout},
+ * {@code VeilarTextView}) with a plain constructor call, so inflation skips LayoutInflater's reflective constructor
+ * lookup. Every other tag goes to the fallback factory, normally AppCompat's, so its widget substitution keeps working.
+ * <p>
+ * Install it before {@code super.onCreate()}, as AppCompat only installs its own factory when none is set:
+ * <pre>
+ * protected void onCreate(Bundle savedInstanceState) {
+ *     VeilarInflaterFactory.install(this);
+ *     super.onCreate(savedInstanceState);
+ * </pre>
+ */
+public final class VeilarInflaterFactory implements LayoutInflater.Factory2 {
+
+    private final LayoutInflater.Factory2 fallback;
+
+    /** @param fallback factory for every non-Veilar tag, or {@code null} to leave those to LayoutInflater */
+    public VeilarInflaterFactory(LayoutInflater.Factory2 fallback) {
+        this.fallback = fallback;
+    }
+
+    /** Installs the factory on the activity's inflater, in front of its AppCompat delegate. */
+    public static void install(AppCompatActivity activity) {
+        AppCompatDelegate delegate = activity.getDelegate();
+        LayoutInflaterCompat.setFactory2(activity.getLayoutInflater(), new VeilarInflaterFactory(new LayoutInflater.Factory2() {
+            @Override
+            public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+                return delegate.createView(parent, name, context, attrs);
+            }
+
+            @Override
+            public View onCreateView(String name, Context context, AttributeSet attrs) {
+                return delegate.createView(null, name, context, attrs);
+            }
+        }));
+    }
+
+    @Override
+    public View onCreateView(View parent, String name, Context context, AttributeSet attrs) {
+        View view = create(name, context, attrs);
+        if (view != null) return view;
+        return fallback != null ? fallback.onCreateView(parent, name, context, attrs) : null;
+    }
+
+    @Override
+    public View onCreateView(String name, Context context, AttributeSet attrs) {
+        return onCreateView(null, name, context, attrs);
+    }
+
+    // LayoutInflater has already applied android:theme to the context it passes in.
+    static View create(String name, Context context, AttributeSet attrs) {
+        switch (name) {
+            case "com.veilar.VeilarButton": return new VeilarButton(context, attrs);
+            case "com.veilar.VeilarTextView": return new VeilarTextView(context, attrs);
+            case "com.veilar.VeilarLayout": return new VeilarLayout(context, attrs);
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.veilar;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.graphics.Shader;
+import android.os.Build;
+import androidx.annotation.RequiresApi;
+
+/**
+ * The {@code app:renderMode="lean"} background: the view draws its shape and shader itself in {@code onDraw} with one
+ * cached {@link Paint}, instead of holding a {@code ShapeDrawable} (and, for buttons, a {@code RippleDrawable} with a
+ * mask). On API 29+ the normal and pressed backgrounds are each recorded into a {@link RenderNode} that is only
+ * re-recorded when the size, shape or shaders change, so a press or an invalidate just replays a node.
+ */
+final class VeilarLeanRenderer {
+
+    static final int MODE_DRAWABLE = 0;
+    static final int MODE_LEAN = 1;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int shapeId;
+    private int shapeParam;
+    private float radius;
+    private int w, h;
+    private Shader normal;
+    private Shader pressed;
+    private boolean isPressed;
+    // Bumped on every change that invalidates the recorded nodes.
+    private int generation;
+    private Nodes nodes;
+
+    void setShape(int shapeId, int shapeParam, float radius) {
+        if (shapeId == this.shapeId && shapeParam == this.shapeParam && radius == this.radius) return;
+        this.shapeId = shapeId;
+        this.shapeParam = shapeParam;
+        this.radius = radius;
+        generation++;
+    }
+
+    void setShaders(int w, int h, Shader normal, Shader pressed) {
+        if (w == this.w && h == this.h && normal == this.normal && pressed == this.pressed) return;
+        this.w = w;
+        this.h = h;
+        this.normal = normal;
+        this.pressed = pressed;
+        generation++;
+    }
+
+    /** Returns whether the drawn background changed, i.e. the view needs an invalidate. */
+    boolean setPressed(boolean isPressed) {
+        if (isPressed == this.isPressed) return false;
+        this.isPressed = isPressed;
+        return normal != pressed;
+    }
+
+    void draw(Canvas canvas) {
+        if (w <= 0 || h <= 0 || normal == null) return;
+        Shader shader = isPressed && pressed != null ? pressed : normal;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && canvas.isHardwareAccelerated()) {
+            if (nodes == null) nodes = new Nodes();
+            nodes.draw(this, canvas, shader == normal ? 0 : 1, shader);
+        } else {
+            drawShape(canvas, shader);
+        }
+    }
+
+    private void drawShape(Canvas canvas, Shader shader) {
+        paint.setShader(shader);
+        if (shapeId == VeilarGeometry.SHAPE_OVAL) {
+            canvas.drawOval(0, 0, w, h, paint);
+        } else if (VeilarGeometry.isComplex(shapeId)) {
+            canvas.drawPath(VeilarGeometry.path(shapeId, shapeParam, w, h, radius), paint);
+        } else {
+            float r = shapeId == VeilarGeometry.SHAPE_PILL ? Math.min(w, h) / 2f : radius;
+            canvas.drawRoundRect(0, 0, w, h, r, r, paint);
+        }
+    }
+
+    // Kept apart so RenderNode is only resolved on releases that have it.
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private static final class Nodes {
+        private final RenderNode[] nodes = {new RenderNode("veilar"), new RenderNode("veilar.pressed")};
+        private final int[] recorded = {-1, -1};
+
+        void draw(VeilarLeanRenderer renderer, Canvas canvas, int index, Shader shader) {
+            RenderNode node = nodes[index];
+            if (recorded[index] != renderer.generation || !node.hasDisplayList()) {
+                node.setPosition(0, 0, renderer.w, renderer.h);
+                RecordingCanvas recording = node.beginRecording();
+                try {
+                    renderer.drawShape(recording, shader);
+                } finally {
+                    node.endRecording();
+                }
+                recorded[index] = renderer.generation;
+            }
+            canvas.drawRenderNode(node);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.veilar;
+
+/**
+ * A prebuilt, immutable Veilar style for restyling views from code, e.g. in {@code onBindViewHolder}:
+ *
+ * <pre>
+ * static final VeilarStyle CHIP = new VeilarStyle.Builder()
+ *         .backgroundGradient("linear|#FF6A00:0.0;#EE0979:1.0|0")
+ *         .shape(VeilarStyle.SHAPE_SQUIRCLE)
+ *         .interaction("shrink, dim")
+ *         .build();
+ *
+ * holder.button.bind(CHIP);
+ * </pre>
+ *
+ * Bundles and shades are parsed once, when the style is built, into the same interned gradients the inflated views
+ * use. Binding the same style again is a no-op, and binding another one only rebuilds what it changes, on the next
+ * draw. Invalid bundles and shades are ignored, as they are in XML.
+ */
+public final class VeilarStyle {
+
+    public static final int SHAPE_ROUND = VeilarGeometry.SHAPE_ROUND;
+    public static final int SHAPE_OVAL = VeilarGeometry.SHAPE_OVAL;
+    public static final int SHAPE_CUT = VeilarGeometry.SHAPE_CUT;
+    public static final int SHAPE_PILL = VeilarGeometry.SHAPE_PILL;
+    public static final int SHAPE_SQUIRCLE = VeilarGeometry.SHAPE_SQUIRCLE;
+    public static final int SHAPE_POLYGON = VeilarGeometry.SHAPE_POLYGON;
+
+    // Same bits as the app:interactions flags the compiler emits.
+    public static final int INTERACTION_SHRINK = 1;
+    public static final int INTERACTION_POP = 1 << 1;
+    public static final int INTERACTION_DIM = 1 << 2;
+    public static final int INTERACTION_GLOW = 1 << 3;
+    public static final int INTERACTION_VIBE = 1 << 4;
+
+    final GradientSpec text;
+    final GradientSpec background;
+    final int shapeId;
+    final int shapeParam;
+    final float radiusDp;
+    final int interactions;
+
+    private VeilarStyle(Builder builder) {
+        text = builder.text;
+        background = builder.background;
+        shapeId = builder.shapeId;
+        shapeParam = builder.shapeParam;
+        interactions = builder.interactions;
+        if (builder.hasRadius) radiusDp = builder.radiusDp;
+        // Same defaults the compiler applies to as9:shape and as9:bggradient.
+        else if (shapeId == SHAPE_CUT || shapeId == SHAPE_SQUIRCLE) radiusDp = 16f;
+        else if (builder.backgroundIsGradient) radiusDp = 8f;
+        else radiusDp = 0f;
+    }
+
+    // The string form of as9:interaction, as hand-written app:interactionBundle attributes still carry it.
+    static int parseInteractions(String effects) {
+        if (effects == null) return 0;
+        int flags = 0;
+        if (effects.contains("shrink")) flags |= INTERACTION_SHRINK;
+        if (effects.contains("pop")) flags |= INTERACTION_POP;
+        if (effects.contains("dim")) flags |= INTERACTION_DIM;
+        if (effects.contains("glow")) flags |= INTERACTION_GLOW;
+        if (effects.contains("vibe")) flags |= INTERACTION_VIBE;
+        return flags;
+    }
+
+    public static final class Builder {
+        private GradientSpec text;
+        private GradientSpec background;
+        private boolean backgroundIsGradient;
+        private int shapeId = SHAPE_ROUND;
+        private int shapeParam = 0;
+        private boolean hasRadius;
+        private float radiusDp;
+        private int interactions = 0;
+
+        /** Text gradient, as an {@code app:gradient} bundle ("type|#hex:stop;...|angle|tile"). */
+        public Builder gradient(String bundle) {
+            text = GradientSpec.parse(bundle);
+            return this;
+        }
+
+        /** Background gradient, as an {@code app:bggradient} bundle. */
+        public Builder backgroundGradient(String bundle) {
+            background = GradientSpec.parse(bundle);
+            backgroundIsGradient = background != null;
+            return this;
+        }
+
+        /** Solid background, as a color string such as {@code "#FF6A00"}. */
+        public Builder backgroundShade(String color) {
+            background = GradientSpec.solid(color);
+            backgroundIsGradient = false;
+            return this;
+        }
+
+        /** Solid background, as an ARGB color int. */
+        public Builder backgroundShade(int color) {
+            background = GradientSpec.solid(color);
+            backgroundIsGradient = false;
+            return this;
+        }
+
+        public Builder shape(int shapeId) {
+            return shape(shapeId, shapeId == SHAPE_POLYGON ? 5 : 0);
+        }
+
+        /** A shape with its parameter; for {@link #SHAPE_POLYGON} that is the number of sides. */
+        public Builder shape(int shapeId, int shapeParam) {
+            this.shapeId = shapeId;
+            this.shapeParam = shapeParam;
+            return this;
+        }
+
+        /** Corner radius in dp. Defaults to 16dp for cut and squircle shapes and 8dp for background gradients. */
+        public Builder radius(float dp) {
+            hasRadius = true;
+            radiusDp = dp;
+            return this;
+        }
+
+        /** Comma-separated effects, as in {@code as9:interaction}: shrink, pop, dim, glow, vibe. */
+        public Builder interaction(String effects) {
+            interactions = parseInteractions(effects);
+            return this;
+        }
+
+        /** Effects as a mask of the {@code INTERACTION_} constants. */
+        public Builder interactions(int flags) {
+            interactions = flags;
+            return this;
+        }
+
+        public VeilarStyle build() {
+            return new VeilarStyle(this);
+        }
+    }
+}
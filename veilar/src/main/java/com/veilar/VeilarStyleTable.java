@@ -0,0 +1,105 @@
+package com.veilar;
+
+import android.content.Context;
+import android.util.SparseArray;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Styles precompiled by the Veilar compiler into {@code assets/veilar/styles_<table>.bin}, looked up through the
+ * {@code app:styleTable} and {@code app:styleId} attributes. Every module that runs the compiler writes its own table,
+ * so views from library modules resolve their ids against their own rows. Each table is read once per process and
+ * holds primitives only, so
+ * views styled through it never split, parse colors or parse floats at inflation time. Lookups are safe from any
+ * thread, so layouts can be inflated off the main thread (e.g. with {@code AsyncLayoutInflater}).
+ */
+final class VeilarStyleTable {
+
+    static final int MAGIC = 0x56535459; // "VSTY"
+    static final int VERSION = 2;
+
+    private static final int HAS_TEXT = 1;
+    private static final int HAS_BACKGROUND = 1 << 1;
+    private static final int HAS_SHAPE = 1 << 2;
+    private static final int HAS_RADIUS = 1 << 3;
+
+    // Table id -> rows. Replaced by a copy with each newly loaded table under the class lock; read without it.
+    private static volatile SparseArray<SparseArray<Style>> tables = new SparseArray<>();
+
+    private VeilarStyleTable() {}
+
+    static final class Style {
+        GradientSpec text;
+        GradientSpec background;
+        boolean hasShape;
+        int shapeId;
+        int shapeParam;
+        boolean hasRadius;
+        float radiusDp;
+    }
+
+    static Style get(Context context, int tableId, int styleId) {
+        if (tableId == 0 || styleId == 0) return null;
+        SparseArray<Style> table = tables.get(tableId);
+        return (table != null ? table : load(context, tableId)).get(styleId);
+    }
+
+    static String assetOf(int tableId) {
+        return String.format(Locale.ROOT, "veilar/styles_%08x.bin", tableId);
+    }
+
+    private static synchronized SparseArray<Style> load(Context context, int tableId) {
+        SparseArray<Style> loaded = tables.get(tableId);
+        if (loaded != null) return loaded;
+        SparseArray<Style> table = new SparseArray<>();
+        try (InputStream raw = context.getApplicationContext().getAssets().open(assetOf(tableId));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+            if (in.readInt() == MAGIC && in.readUnsignedShort() == VERSION) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    int id = in.readInt();
+                    in.readUnsignedShort(); // payload length, for readers that skip entries
+                    table.append(id, readStyle(in));
+                }
+            }
+        } catch (Exception e) {}
+        SparseArray<SparseArray<Style>> next = tables.clone();
+        next.put(tableId, table);
+        tables = next;
+        return table;
+    }
+
+    private static Style readStyle(DataInputStream in) throws IOException {
+        Style style = new Style();
+        int flags = in.readUnsignedByte();
+        if ((flags & HAS_TEXT) != 0) style.text = readGradient(in);
+        if ((flags & HAS_BACKGROUND) != 0) style.background = readGradient(in);
+        if ((flags & HAS_SHAPE) != 0) {
+            style.hasShape = true;
+            style.shapeId = in.readUnsignedByte();
+            style.shapeParam = in.readUnsignedShort();
+        }
+        if ((flags & HAS_RADIUS) != 0) {
+            style.hasRadius = true;
+            style.radiusDp = in.readFloat();
+        }
+        return style;
+    }
+
+    private static GradientSpec readGradient(DataInputStream in) throws IOException {
+        int type = in.readUnsignedByte();
+        int angle = in.readShort();
+        int tile = in.readUnsignedByte();
+        int count = in.readUnsignedByte();
+        int[] colors = new int[count];
+        float[] stops = new float[count];
+        for (int i = 0; i < count; i++) {
+            colors[i] = in.readInt();
+            stops[i] = in.readFloat();
+        }
+        return GradientSpec.of(type, angle, tile, colors, stops);
+    }
+}
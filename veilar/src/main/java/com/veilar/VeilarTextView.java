@@ -2,85 +2,107 @@ package com.veilar;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.LinearGradient;
+import android.graphics.ColorFilter;
 import android.graphics.Outline;
-import android.graphics.Path;
 import android.graphics.PorterDuff;
-import android.graphics.RadialGradient;
+import android.graphics.PorterDuffColorFilter;
 import android.graphics.Shader;
-import android.graphics.SweepGradient;
+import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.ShapeDrawable;
-import android.graphics.drawable.shapes.PathShape;
-import android.graphics.drawable.shapes.RoundRectShape;
-import android.graphics.drawable.shapes.Shape;
 import android.util.AttributeSet;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewOutlineProvider;
 import androidx.appcompat.widget.AppCompatTextView;
-import java.util.Arrays;
 
 public class VeilarTextView extends AppCompatTextView {
 
+    private static final ColorFilter PRESSED_DIM = new PorterDuffColorFilter(Color.argb(40, 0, 0, 0), PorterDuff.Mode.SRC_ATOP);
+    private static final ColorFilter PRESSED_GLOW = new PorterDuffColorFilter(Color.argb(40, 255, 255, 255), PorterDuff.Mode.SRC_ATOP);
+
     private float manualRadius = 0f;
     private int shapeId = 0;
     private int shapeParam = 0;
-    private String interactionBundle = "";
-    private String cachedTextGradient = null;
-    private String cachedBgGradient = null;
-    private String cachedBgShade = null;
+    private int interactions = 0;
+    private GradientSpec textGradient = null;
+    private GradientSpec bgGradient = null;
+
+    // Press state, resolved once: the touch path only swaps these references.
+    private boolean popOnPress = false;
+    private float pressedFactor = 1.0f;
+    private Shader normalTextShader = null;
+    private Shader pressedTextShader = null;
+    private Shader normalBgShader = null;
+    private Shader pressedBgShader = null;
+    private Drawable pressBackground = null;
+    // Set for app:renderMode="lean": the background is drawn in onDraw instead of through a drawable.
+    private VeilarLeanRenderer lean = null;
+    // Size the current backgrounds and shaders were built for; see materialize().
+    private int builtWidth = 0;
+    private int builtHeight = 0;
+    private VeilarStyle boundStyle = null;
 
     public VeilarTextView(Context context, AttributeSet attrs) {
         super(context, attrs);
         init(context, attrs);
     }
 
+    // Safe off the main thread, like VeilarButton.init().
     private void init(Context context, AttributeSet attrs) {
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.VeilarAttributes);
-        cachedTextGradient = a.getString(R.styleable.VeilarAttributes_gradient);
-        cachedBgGradient = a.getString(R.styleable.VeilarAttributes_bggradient);
-        cachedBgShade = a.getString(R.styleable.VeilarAttributes_bgshade);
+        VeilarStyleTable.Style style = VeilarStyleTable.get(context, a.getInt(R.styleable.VeilarAttributes_styleTable, 0),
+                a.getInt(R.styleable.VeilarAttributes_styleId, 0));
+        String textBundle = a.getString(R.styleable.VeilarAttributes_gradient);
+        String bgBundle = a.getString(R.styleable.VeilarAttributes_bggradient);
+        String bgShade = a.getString(R.styleable.VeilarAttributes_bgshade);
         String radiusStr = a.getString(R.styleable.VeilarAttributes_radius);
         String shapeBundle = a.getString(R.styleable.VeilarAttributes_shapeBundle);
-        interactionBundle = a.getString(R.styleable.VeilarAttributes_interactionBundle);
-        if (interactionBundle == null) interactionBundle = "";
+        int interactions = a.getInt(R.styleable.VeilarAttributes_interactions, 0);
+        // Hand-written layouts may still use the string form.
+        if (interactions == 0) interactions = VeilarStyle.parseInteractions(a.getString(R.styleable.VeilarAttributes_interactionBundle));
+        int renderMode = a.getInt(R.styleable.VeilarAttributes_renderMode, VeilarLeanRenderer.MODE_DRAWABLE);
         a.recycle();
 
-        setClickable(true);
-        setLongClickable(true);
+        if (renderMode == VeilarLeanRenderer.MODE_LEAN) lean = new VeilarLeanRenderer();
 
-        float density = getResources().getDisplayMetrics().density;
-        if (shapeBundle != null) {
-            String[] parts = shapeBundle.split(":");
-            shapeId = Integer.parseInt(parts[0]);
-            shapeParam = Integer.parseInt(parts[1]);
-        }
-
-        if (radiusStr != null) {
-            manualRadius = Float.parseFloat(radiusStr.replaceAll("[^\\d.]", "")) * density;
-        } else if (cachedBgGradient != null) {
-            manualRadius = 8f * density;
-        }
+        setInteractions(interactions);
 
-        post(() -> {
-            if (cachedTextGradient != null && !cachedTextGradient.isEmpty()) applyGradient(cachedTextGradient, true, 1.0f);
+        float density = getResources().getDisplayMetrics().density;
+        if (style != null) {
+            textGradient = style.text;
+            bgGradient = style.background;
+            shapeId = style.shapeId;
+            shapeParam = style.shapeParam;
+            if (style.hasRadius) manualRadius = style.radiusDp * density;
+        } else {
+            textGradient = GradientSpec.parse(textBundle);
+            bgGradient = GradientSpec.parse(bgBundle);
+            if (bgGradient == null) bgGradient = GradientSpec.solid(bgShade);
+
+            if (shapeBundle != null) {
+                String[] parts = shapeBundle.split(":");
+                shapeId = Integer.parseInt(parts[0]);
+                shapeParam = Integer.parseInt(parts[1]);
+            }
 
-            if (cachedBgGradient != null && !cachedBgGradient.isEmpty()) {
-                applyGradient(cachedBgGradient, false, 1.0f);
-            } else if (cachedBgShade != null) {
-                String dummyGradient = "linear:0:0|" + cachedBgShade + ":0;" + cachedBgShade + ":1|0|clamp";
-                applyGradient(dummyGradient, false, 1.0f);
+            if (radiusStr != null) {
+                manualRadius = Float.parseFloat(radiusStr.replaceAll("[^\\d.]", "")) * density;
+            } else if (bgBundle != null) {
+                manualRadius = 8f * density;
             }
-        });
+        }
+        reserveBackground();
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (interactions == 0) return super.onTouchEvent(event);
         int action = event.getAction();
-        if (interactionBundle.contains("pop")) {
+        if (popOnPress) {
             if (action == MotionEvent.ACTION_DOWN) {
                 this.animate().scaleX(1.05f).scaleY(1.05f).setDuration(100).start();
                 handleInteractionShift(true);
@@ -95,191 +117,182 @@ public class VeilarTextView extends AppCompatTextView {
         return super.onTouchEvent(event);
     }
 
-    private void handleInteractionShift(boolean isPressed) {
-        float factor = 1.0f;
-        if (isPressed) {
-            if (interactionBundle.contains("dim")) factor = 0.8f;
-            else if (interactionBundle.contains("glow")) factor = 1.3f;
+    /**
+     * Restyles this view from code, e.g. when a recycled view holder is bound. Binding the style that is already bound
+     * is a no-op; otherwise only the state it changes is dropped and rebuilt once the size is known.
+     */
+    public void bind(VeilarStyle style) {
+        if (style == null || style == boundStyle) return;
+        boundStyle = style;
+        resetPress();
+        float oldFactor = pressedFactor;
+        if (style.interactions != interactions) setInteractions(style.interactions);
+        float radius = style.radiusDp * getResources().getDisplayMetrics().density;
+        if (style.text == textGradient && style.background == bgGradient && style.shapeId == shapeId && style.shapeParam == shapeParam
+                && radius == manualRadius && pressedFactor == oldFactor) return;
+
+        if (style.text == null && textGradient != null) {
+            getPaint().setShader(null);
+            normalTextShader = null;
+            pressedTextShader = null;
+        }
+        if (style.background == null && bgGradient != null) {
+            normalBgShader = null;
+            pressedBgShader = null;
+            if (lean != null) lean.setShaders(0, 0, null, null);
+            else setBackground(null);
+            setOutlineProvider(ViewOutlineProvider.BACKGROUND);
+            setClipToOutline(false);
         }
+        textGradient = style.text;
+        bgGradient = style.background;
+        shapeId = style.shapeId;
+        shapeParam = style.shapeParam;
+        manualRadius = radius;
+        reserveBackground();
+        // Rebuilt now if the size is known, otherwise by onSizeChanged() on the first layout.
+        builtWidth = 0;
+        builtHeight = 0;
+        materialize();
+        invalidate();
+    }
 
-        if (cachedTextGradient != null) updateShaderOnly(true, cachedTextGradient, factor);
+    private void setInteractions(int flags) {
+        interactions = flags;
+        popOnPress = (flags & VeilarStyle.INTERACTION_POP) != 0;
+        if ((flags & VeilarStyle.INTERACTION_DIM) != 0) pressedFactor = 0.8f;
+        else if ((flags & VeilarStyle.INTERACTION_GLOW) != 0) pressedFactor = 1.3f;
+        else pressedFactor = 1.0f;
+        // Only interactive views take touches, so a plain styled container lets them through to what is behind it.
+        // Only ever turned on: a listener the app set keeps working when a plain style is bound.
+        if (flags != 0) setClickable(true);
+        if ((flags & VeilarStyle.INTERACTION_VIBE) != 0) setLongClickable(true);
+    }
 
-        Drawable bg = getBackground();
-        if (bg instanceof ShapeDrawable) {
-            if (cachedBgGradient != null) {
-                updateShaderOnly(false, cachedBgGradient, factor);
-            } else if (cachedBgShade != null) {
-                String dummyGradient = "linear:0:0|" + cachedBgShade + ":0;" + cachedBgShade + ":1|0|clamp";
-                updateShaderOnly(false, dummyGradient, factor);
-            }
-        } else if (bg != null) {
-            if (isPressed && factor != 1.0f) {
-                int tint = (factor < 1.0f) ? Color.argb(40, 0, 0, 0) : Color.argb(40, 255, 255, 255);
-                bg.setColorFilter(tint, PorterDuff.Mode.SRC_ATOP);
-            } else {
-                bg.clearColorFilter();
+    // See VeilarButton.resetPress().
+    private void resetPress() {
+        animate().cancel();
+        setScaleX(1.0f);
+        setScaleY(1.0f);
+        setPressed(false);
+        if (pressedTextShader != null) getPaint().setShader(normalTextShader);
+        if (lean != null) {
+            if (lean.setPressed(false)) invalidate();
+        } else if (pressBackground != null) {
+            pressBackground.clearColorFilter();
+            if (pressBackground instanceof ShapeDrawable && normalBgShader != null) {
+                ((ShapeDrawable) pressBackground).getPaint().setShader(normalBgShader);
             }
+            pressBackground = null;
         }
     }
 
-    private void updateShaderOnly(boolean isText, String bundle, float factor) {
-        try {
-            String[] segments = bundle.split("\\|");
-            String[] shaderParams = segments[0].split(":");
-            String type = shaderParams[0];
-            String[] colorEntries = segments[1].split(";");
-            int[] colors = new int[colorEntries.length];
-            float[] stops = new float[colorEntries.length];
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        materialize();
+    }
 
-            for (int i = 0; i < colorEntries.length; i++) {
-                String[] pair = colorEntries[i].split(":");
-                int baseColor = Color.parseColor(pair[0]);
-                colors[i] = factor == 1.0f ? baseColor : shiftBrightness(baseColor, factor);
-                stops[i] = Float.parseFloat(pair[1]);
-            }
+    // Builds the backgrounds and shaders once per size, during layout, so draw() never changes view state and the
+    // first frame already has them. A layout at the same size is a no-op.
+    private void materialize() {
+        int w = getWidth(), h = getHeight();
+        if (w <= 0 || h <= 0 || (w == builtWidth && h == builtHeight)) return;
+        builtWidth = w;
+        builtHeight = h;
+        if (textGradient != null) applyGradient(textGradient, true, 1.0f);
+        if (bgGradient != null) applyGradient(bgGradient, false, 1.0f);
+    }
 
-            float w = getWidth(), h = getHeight();
-            Shader shader;
+    // See VeilarButton.reserveBackground().
+    private void reserveBackground() {
+        if (lean == null && bgGradient != null && getBackground() == null) setBackground(new ColorDrawable(Color.TRANSPARENT));
+    }
 
-            if (type.equals("radial")) {
-                shader = new RadialGradient(w / 2, h / 2, Math.max(w, h) / 2, colors, stops, Shader.TileMode.CLAMP);
-            } else if (type.equals("sweep")) {
-                shader = new SweepGradient(w / 2, h / 2, colors, stops);
-            } else {
-                int angle = (segments.length > 2) ? Integer.parseInt(segments[2]) : 0;
-                double rad = Math.toRadians(angle);
-                shader = new LinearGradient(0, 0, (float) (Math.cos(rad) * w), (float) (Math.sin(rad) * h), colors, stops, Shader.TileMode.CLAMP);
-            }
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (lean != null) {
+            int scrollX = getScrollX(), scrollY = getScrollY();
+            canvas.translate(scrollX, scrollY);
+            lean.draw(canvas);
+            canvas.translate(-scrollX, -scrollY);
+        }
+        super.onDraw(canvas);
+    }
 
-            if (isText) {
-                getPaint().setShader(shader);
-            } else {
-                Drawable bg = getBackground();
-                if (bg instanceof ShapeDrawable) {
-                    ((ShapeDrawable) bg).getPaint().setShader(shader);
-                }
-            }
+    private void handleInteractionShift(boolean isPressed) {
+        if (pressedFactor == 1.0f) return;
+        if (pressedTextShader != null) {
+            getPaint().setShader(isPressed ? pressedTextShader : normalTextShader);
             invalidate();
-        } catch (Exception e) {}
+        }
+
+        if (lean != null) {
+            if (lean.setPressed(isPressed)) invalidate();
+            return;
+        }
+        Drawable bg = getBackground();
+        if (bg == null) return;
+        if (bg != pressBackground) {
+            // The background may come from VeilarDrawableCache; give this view its own paint before changing it.
+            bg = bg.mutate();
+            pressBackground = bg;
+        }
+        if (bg instanceof ShapeDrawable) {
+            if (pressedBgShader == null) return;
+            ((ShapeDrawable) bg).getPaint().setShader(isPressed ? pressedBgShader : normalBgShader);
+            invalidate();
+        } else if (isPressed) {
+            bg.setColorFilter(pressedFactor < 1.0f ? PRESSED_DIM : PRESSED_GLOW);
+        } else {
+            bg.clearColorFilter();
+        }
     }
 
     @Override
     public boolean performLongClick() {
-        if (interactionBundle.contains("vibe")) {
+        if ((interactions & VeilarStyle.INTERACTION_VIBE) != 0) {
             this.performHapticFeedback(HapticFeedbackConstants.KEYBOARD_TAP);
         }
         return super.performLongClick();
     }
 
-    private void applyGradient(String bundle, boolean isText, float brightnessFactor) {
+    private void applyGradient(GradientSpec gradient, boolean isText, float brightnessFactor) {
         try {
-            String[] segments = bundle.split("\\|");
-            if (segments.length < 2) return;
-
-            String[] shaderParams = segments[0].split(":", -1);
-            String type = shaderParams[0];
-
-            String[] colorEntries = segments[1].split(";");
-            int[] colors = new int[colorEntries.length];
-            float[] stops = new float[colorEntries.length];
-            for (int i = 0; i < colorEntries.length; i++) {
-                String[] pair = colorEntries[i].split(":");
-                int baseColor = Color.parseColor(pair[0]);
-                colors[i] = brightnessFactor == 1.0f ? baseColor : shiftBrightness(baseColor, brightnessFactor);
-                stops[i] = Float.parseFloat(pair[1]);
-            }
-
             float w = getWidth(), h = getHeight();
             if (w <= 0 || h <= 0) return;
 
-            Shader shader;
-            if (type.equals("radial")) {
-                float cx = w / 2, cy = h / 2, radius = Math.max(w, h) / 2;
-                shader = new RadialGradient(cx, cy, radius, colors, stops, Shader.TileMode.CLAMP);
-            } else if (type.equals("sweep")) {
-                shader = new SweepGradient(w / 2, h / 2, colors, stops);
-            } else {
-                int angle = (segments.length > 2) ? Integer.parseInt(segments[2]) : 0;
-                double rad = Math.toRadians(angle);
-                shader = new LinearGradient(0, 0, (float) (Math.cos(rad) * w), (float) (Math.sin(rad) * h), colors, stops, Shader.TileMode.CLAMP);
-            }
+            Shader shader = VeilarDrawableCache.shader(gradient, (int) w, (int) h, brightnessFactor);
+            Shader pressed = pressedFactor == 1.0f ? shader
+                    : VeilarDrawableCache.shader(gradient, (int) w, (int) h, brightnessFactor * pressedFactor);
 
             if (isText) {
+                normalTextShader = shader;
+                pressedTextShader = pressed;
                 getPaint().setShader(shader);
-                invalidate();
             } else {
-                Shape vShape = getVeilarShape(w, h);
-                ShapeDrawable drawable = new ShapeDrawable(vShape);
-                drawable.getPaint().setShader(shader);
-                this.setBackground(drawable);
+                normalBgShader = shader;
+                pressedBgShader = pressed;
+                if (lean != null) {
+                    lean.setShape(shapeId, shapeParam, manualRadius);
+                    lean.setShaders((int) w, (int) h, shader, pressed);
+                } else {
+                    this.setBackground(VeilarDrawableCache.background(getResources(), VeilarDrawableCache.KIND_BACKGROUND, gradient,
+                            (int) w, (int) h, shapeId, shapeParam, manualRadius, brightnessFactor, () -> {
+                        ShapeDrawable drawable = new ShapeDrawable(VeilarGeometry.shape(shapeId, shapeParam, w, h, manualRadius));
+                        drawable.getPaint().setShader(shader);
+                        return drawable;
+                    }));
+                }
 
-                setClipToOutline(true);
                 setOutlineProvider(new ViewOutlineProvider() {
                     @Override
                     public void getOutline(View view, Outline outline) {
-                        if (shapeId == 1) outline.setOval(0, 0, (int)w, (int)h);
-                        else outline.setRoundRect(0, 0, (int)w, (int)h, manualRadius);
+                        VeilarGeometry.outline(outline, shapeId, shapeParam, (int) w, (int) h, manualRadius);
                     }
                 });
+                setClipToOutline(true);
             }
         } catch (Exception e) {}
     }
-
-    private int shiftBrightness(int color, float factor) {
-        float[] hsv = new float[3];
-        Color.colorToHSV(color, hsv);
-        hsv[2] *= factor;
-        hsv[2] = Math.max(0f, Math.min(1f, hsv[2]));
-        return Color.HSVToColor(Color.alpha(color), hsv);
-    }
-
-    private Shape getVeilarShape(float w, float h) {
-        switch (shapeId) {
-            case 1: return new android.graphics.drawable.shapes.OvalShape();
-            case 2: return createCutCornerShape(w, h, manualRadius);
-            case 3:
-                float pr = Math.min(w, h) / 2f;
-                float[] radii = new float[8];
-                Arrays.fill(radii, pr);
-                return new RoundRectShape(radii, null, null);
-            case 4: return createSquircleShape(w, h, manualRadius);
-            case 5: return createPolygonShape(w, h, shapeParam);
-            default:
-                float[] r = new float[8];
-                Arrays.fill(r, manualRadius);
-                return new RoundRectShape(r, null, null);
-        }
-    }
-
-    private Shape createCutCornerShape(float w, float h, float r) {
-        Path path = new Path();
-        path.moveTo(r, 0); path.lineTo(w - r, 0); path.lineTo(w, r);
-        path.lineTo(w, h - r); path.lineTo(w - r, h); path.lineTo(r, h);
-        path.lineTo(0, h - r); path.lineTo(0, r); path.close();
-        return new PathShape(path, w, h);
-    }
-
-    private Shape createPolygonShape(float w, float h, int sides) {
-        Path path = new Path();
-        float cx = w / 2f, cy = h / 2f, rx = w / 2f, ry = h / 2f;
-        for (int i = 0; i < sides; i++) {
-            double angle = 2.0 * Math.PI * i / sides - Math.PI / 2.0;
-            float x = (float) (cx + rx * Math.cos(angle)), y = (float) (cy + ry * Math.sin(angle));
-            if (i == 0) path.moveTo(x, y); else path.lineTo(x, y);
-        }
-        path.close();
-        return new PathShape(path, w, h);
-    }
-
-    private Shape createSquircleShape(float w, float h, float r) {
-        Path path = new Path();
-        float maxR = Math.min(w, h) / 2f, safeR = Math.min(r, maxR);
-        float ratio = 0.5522847498f, c = safeR * ratio;
-        path.moveTo(safeR, 0); path.lineTo(w - safeR, 0);
-        path.cubicTo(w - c, 0, w, c, w, safeR); path.lineTo(w, h - safeR);
-        path.cubicTo(w, h - c, w - c, h, w - safeR, h); path.lineTo(safeR, h);
-        path.cubicTo(c, h, 0, h - c, 0, h - safeR); path.lineTo(0, safeR);
-        path.cubicTo(0, c, c, 0, safeR, 0); path.close();
-        return new PathShape(path, w, h);
-    }
-}
\ No newline at end of file
+}